@@ -7,6 +7,9 @@ import org.eclipse.wst.sse.ui.contentassist.CompletionProposalInvocationContext;
 import org.eclipse.wst.xml.ui.internal.contentassist.ContentAssistRequest;
 import org.eclipse.wst.xml.ui.internal.contentassist.DefaultXMLCompletionProposalComputer;
 
+import com.anjlab.eclipse.tapestry5.Activator;
+import com.anjlab.eclipse.tapestry5.ComponentIndex;
+import com.anjlab.eclipse.tapestry5.ComponentIndex.Kind;
 import com.anjlab.eclipse.tapestry5.TapestryContext;
 import com.anjlab.eclipse.tapestry5.TapestryModule;
 import com.anjlab.eclipse.tapestry5.TapestryProject;
@@ -16,24 +19,64 @@ import com.anjlab.eclipse.tapestry5.TapestryUtils;
 public class TapestryCompletionProposalComputer
     extends DefaultXMLCompletionProposalComputer
 {
+    private static final String MESSAGE_PREFIX = "message:";
+    
+    private static final String TAPESTRY_PREFIX = "t:";
+    
+    private static final int MAX_COMPONENT_PROPOSALS = 50;
 
     @Override
     protected void addTagNameProposals(
             ContentAssistRequest contentAssistRequest, int childPosition,
             CompletionProposalInvocationContext context)
     {
-        //  TODO
-//        int offset = context.getInvocationOffset();
-//        
-//        contentAssistRequest.addProposal(new CompletionProposal(
-//                "ReplacementString1",
-//                // replacementOffset -- index of where the replacement should start from
-//                // current position of rewind some chars back to tag/attributeName/attributeValue start
-//                offset,
-//                // replacementLength -- how many chars right from current position will be overwritten by replacement (others will be shifted right)
-//                0,
-//                // cursorPosition: this value will be added to replacementOffset
-//                "ReplacementString1".length()));
+        addComponentNameProposals(contentAssistRequest, context);
+    }
+    
+    /**
+     * Proposes components of the application and its libraries for <code>t:</code> elements,
+     * i.e. <code>t:user.edituser</code> for <code>t:usred</code>.
+     */
+    private void addComponentNameProposals(
+            ContentAssistRequest contentAssistRequest,
+            CompletionProposalInvocationContext context)
+    {
+        String matchString = contentAssistRequest.getMatchString();
+        
+        if (matchString == null || !matchString.startsWith(TAPESTRY_PREFIX))
+        {
+            return;
+        }
+        
+        Shell shell = context.getViewer().getTextWidget().getShell();
+        
+        IWorkbenchWindow window = TapestryUtils.getWorkbenchWindow(shell);
+        
+        if (window == null)
+        {
+            return;
+        }
+        
+        TapestryProject tapestryProject = Activator.getDefault().getTapestryProject(window);
+        
+        if (tapestryProject == null)
+        {
+            return;
+        }
+        
+        String query = matchString.substring(TAPESTRY_PREFIX.length());
+        
+        for (ComponentIndex.Entry entry : tapestryProject.findComponents(
+                Kind.COMPONENT, null, query, MAX_COMPONENT_PROPOSALS))
+        {
+            //  Element names can't contain slashes
+            String replacement = TAPESTRY_PREFIX + entry.getName().replace('/', '.');
+            
+            contentAssistRequest.addProposal(new CompletionProposal(replacement,
+                    contentAssistRequest.getReplacementBeginPosition(),
+                    contentAssistRequest.getReplacementLength(),
+                    replacement.length()));
+        }
     }
     
     @Override
@@ -87,6 +130,70 @@ public class TapestryCompletionProposalComputer
             CompletionProposalInvocationContext context)
     {
         //  TODO Page/Component properties
+        
+        addMessageKeyProposals(contentAssistRequest, context);
+    }
+    
+    /**
+     * Proposes message keys of the current context for <code>message:</code> bindings
+     * and <code>${message:...}</code> expansions in attribute values.
+     */
+    private void addMessageKeyProposals(
+            ContentAssistRequest contentAssistRequest,
+            CompletionProposalInvocationContext context)
+    {
+        String matchString = contentAssistRequest.getMatchString();
+        
+        if (matchString == null)
+        {
+            return;
+        }
+        
+        //  Text of the attribute value before the cursor, including opening quote
+        int bindingStart = matchString.startsWith("\"") || matchString.startsWith("'") ? 1 : 0;
+        
+        int expansionStart = matchString.lastIndexOf("${");
+        
+        if (expansionStart >= 0 && matchString.indexOf('}', expansionStart) < 0)
+        {
+            bindingStart = expansionStart + 2;
+        }
+        
+        if (!matchString.startsWith(MESSAGE_PREFIX, bindingStart))
+        {
+            return;
+        }
+        
+        int keyStart = bindingStart + MESSAGE_PREFIX.length();
+        
+        String prefix = matchString.substring(keyStart).toLowerCase();
+        
+        Shell shell = context.getViewer().getTextWidget().getShell();
+        
+        IWorkbenchWindow window = TapestryUtils.getWorkbenchWindow(shell);
+        
+        if (window == null)
+        {
+            return;
+        }
+        
+        TapestryContext tapestryContext = Activator.getDefault().getTapestryContext(window);
+        TapestryProject tapestryProject = Activator.getDefault().getTapestryProject(window);
+        
+        if (tapestryContext == null || tapestryProject == null)
+        {
+            return;
+        }
+        
+        int offset = contentAssistRequest.getReplacementBeginPosition() + keyStart;
+        
+        for (String key : tapestryProject.getMessageKeys(tapestryContext))
+        {
+            if (key.toLowerCase().startsWith(prefix))
+            {
+                contentAssistRequest.addProposal(new CompletionProposal(key, offset, prefix.length(), key.length()));
+            }
+        }
     }
 }
 
@@ -12,6 +12,7 @@ import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import com.anjlab.eclipse.tapestry5.watchdog.ProjectTopologyWatchdog;
 import com.anjlab.eclipse.tapestry5.watchdog.TapestryContextWatchdog;
 import com.anjlab.eclipse.tapestry5.watchdog.TapestryProjectWatchdog;
 import com.anjlab.eclipse.tapestry5.watchdog.WebXmlWatchdog;
@@ -32,6 +33,10 @@ public class Activator extends AbstractUIPlugin
     private TapestryContextWatchdog tapestryContextWatchdog;
     private WebXmlWatchdog webXmlWatchdog;
     private TapestryProjectWatchdog tapestryProjectWatchdog;
+    private TapestryContextCache tapestryContextCache;
+    private ImportCache importCache;
+    private ArchiveClassIndexCache archiveClassIndexCache;
+    private ProjectTopologyWatchdog projectTopologyWatchdog;
     
     /**
      * The constructor
@@ -55,6 +60,15 @@ public class Activator extends AbstractUIPlugin
         
         projectCache = new ConcurrentHashMap<String, Map<String,Object>>();
         
+        tapestryContextCache = new TapestryContextCache();
+        
+        importCache = new ImportCache();
+        
+        archiveClassIndexCache = new ArchiveClassIndexCache();
+        
+        projectTopologyWatchdog = new ProjectTopologyWatchdog();
+        projectTopologyWatchdog.start();
+        
         tapestryContextWatchdog = new TapestryContextWatchdog();
         tapestryContextWatchdog.start();
         
@@ -98,6 +112,16 @@ public class Activator extends AbstractUIPlugin
         
         projectCache = null;
         
+        tapestryContextCache = null;
+        
+        importCache = null;
+        
+        archiveClassIndexCache.clear();
+        archiveClassIndexCache = null;
+        
+        projectTopologyWatchdog.stop();
+        projectTopologyWatchdog = null;
+        
         plugin = null;
         super.stop(context);
     }
@@ -171,6 +195,26 @@ public class Activator extends AbstractUIPlugin
         tapestryContextWatchdog.removeTapestryContextListener(window, listener);
     }
 
+    public TapestryContextCache getTapestryContextCache()
+    {
+        return tapestryContextCache;
+    }
+    
+    public ImportCache getImportCache()
+    {
+        return importCache;
+    }
+    
+    public ArchiveClassIndexCache getArchiveClassIndexCache()
+    {
+        return archiveClassIndexCache;
+    }
+    
+    public ProjectTopology getProjectTopology(IProject project)
+    {
+        return projectTopologyWatchdog.getProjectTopology(project);
+    }
+    
     public WebXml getWebXml(IProject project)
     {
         return webXmlWatchdog.getWebXmlCache(project);
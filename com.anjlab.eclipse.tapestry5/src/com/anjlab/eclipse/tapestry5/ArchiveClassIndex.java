@@ -0,0 +1,128 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Case-insensitive index of class files in an archive.
+ * <p>
+ * Maps lower-cased <code>package/path/Name.class</code> (just <code>Name.class</code> for the default package)
+ * to the name of the entry with its original case. The index is built once from the central directory
+ * of the archive on first lookup and is shared by all projects that reference the same archive,
+ * see {@link ArchiveClassIndexCache}.
+ */
+public class ArchiveClassIndex
+{
+    private final String fingerprint;
+    
+    private final Map<String, String> entryNames = new HashMap<String, String>();
+    
+    ArchiveClassIndex(String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * @return Fingerprint of the archive when the index was built, or <code>null</code> if it has none.
+     */
+    String getFingerprint()
+    {
+        return fingerprint;
+    }
+    
+    void build(IPackageFragmentRoot root)
+    {
+        File archive = EclipseUtils.getArchiveFile(root);
+        
+        if (archive != null && archive.isFile())
+        {
+            try
+            {
+                for (String entryName : new ZipArchive(archive).readEntryNames())
+                {
+                    add(entryName);
+                }
+                
+                return;
+            }
+            catch (IOException e)
+            {
+                //  Fall back to the Java model, it knows how to read any archive
+                entryNames.clear();
+            }
+        }
+        
+        try
+        {
+            for (IJavaElement child : root.getChildren())
+            {
+                if (!(child instanceof IPackageFragment))
+                {
+                    continue;
+                }
+                
+                IPackageFragment pkg = (IPackageFragment) child;
+                
+                String prefix = pkg.isDefaultPackage()
+                              ? ""
+                              : pkg.getElementName().replace('.', '/') + "/";
+                
+                for (IClassFile classFile : pkg.getClassFiles())
+                {
+                    add(prefix + classFile.getElementName());
+                }
+            }
+        }
+        catch (JavaModelException e)
+        {
+            Activator.getDefault().logError("Error indexing classes of " + root.getElementName(), e);
+        }
+    }
+    
+    private void add(String entryName)
+    {
+        if (!entryName.endsWith(".class"))
+        {
+            return;
+        }
+        
+        String key = entryName.toLowerCase();
+        
+        //  Keep the first of the names that only differ in case
+        if (!entryNames.containsKey(key))
+        {
+            entryNames.put(key, entryName);
+        }
+    }
+    
+    /**
+     * @param path Path of the class file relative to the root, i.e. <code>org/example/pages/Index.class</code>,
+     *             compared ignoring case.
+     * @return Class file with the given path, or <code>null</code> if there's no such class file in the archive.
+     */
+    public IClassFile findClassFile(IPackageFragmentRoot root, String path)
+    {
+        String entryName = entryNames.get((path.startsWith("/") ? path.substring(1) : path).toLowerCase());
+        
+        if (entryName == null)
+        {
+            return null;
+        }
+        
+        int index = entryName.lastIndexOf('/');
+        
+        String packageName = index < 0 ? "" : entryName.substring(0, index).replace('/', '.');
+        
+        IClassFile classFile = root.getPackageFragment(packageName).getClassFile(entryName.substring(index + 1));
+        
+        return classFile.exists() ? classFile : null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+/**
+ * Bounded LRU cache of {@link ArchiveClassIndex}es shared by all projects that reference the same archive.
+ * <p>
+ * Indexes are keyed by path of the archive and are only returned while fingerprint of the archive matches.
+ * Java element deltas drop indexes of the archives that changed or were removed from the class path,
+ * which also covers archives without fingerprint, i.e. the ones that are not in the local file system.
+ */
+public class ArchiveClassIndexCache
+{
+    private static final int MAX_SIZE = 256;
+    
+    private final Map<String, ArchiveClassIndex> indexes = new LinkedHashMap<String, ArchiveClassIndex>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ArchiveClassIndex> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+    
+    /**
+     * @return Index of the archive, or <code>null</code> if the root is not an archive.
+     */
+    public ArchiveClassIndex getIndex(IPackageFragmentRoot root)
+    {
+        if (!root.isArchive())
+        {
+            return null;
+        }
+        
+        String fingerprint = TapestryModuleIndex.getFingerprint(root);
+        
+        String key = getKey(root);
+        
+        synchronized (this)
+        {
+            ArchiveClassIndex index = indexes.get(key);
+            
+            if (index != null
+                    && (fingerprint == null ? index.getFingerprint() == null : fingerprint.equals(index.getFingerprint())))
+            {
+                return index;
+            }
+        }
+        
+        //  Build outside of the lock, so that lookups in other archives don't wait for this one
+        ArchiveClassIndex index = new ArchiveClassIndex(fingerprint);
+        
+        index.build(root);
+        
+        synchronized (this)
+        {
+            indexes.put(key, index);
+        }
+        
+        return index;
+    }
+    
+    private static String getKey(IJavaElement root)
+    {
+        return root.getPath().toPortableString();
+    }
+    
+    /**
+     * Drops indexes of the archives affected by the Java element delta.
+     */
+    public void elementChanged(IJavaElementDelta delta)
+    {
+        IJavaElement element = delta.getElement();
+        
+        switch (element.getElementType())
+        {
+        case IJavaElement.JAVA_MODEL:
+        case IJavaElement.JAVA_PROJECT:
+            
+            break;
+        
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            
+            if (delta.getKind() == IJavaElementDelta.REMOVED
+                    || (delta.getFlags() & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+                                          | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0)
+            {
+                remove(element);
+            }
+            return;
+        
+        default:
+            
+            return;
+        }
+        
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+        {
+            elementChanged(child);
+        }
+    }
+    
+    private synchronized void remove(IJavaElement root)
+    {
+        indexes.remove(getKey(root));
+    }
+    
+    public synchronized void clear()
+    {
+        indexes.clear();
+    }
+}
@@ -0,0 +1,761 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Catalog of page, component and mixin classes of a {@link TapestryProject} by their logical names.
+ * <p>
+ * Keys are kind, lower-cased library prefix and path, i.e. <code>components|core:form</code>
+ * or <code>pages|:user/edit</code>, so that names from templates are resolved with a single map lookup.
+ * Classes can also be referenced without the trailing name of their folder,
+ * i.e. <code>user/Edit</code> for <code>user/EditUser</code>, such aliases are indexed too.
+ * <p>
+ * When several classes have the same name the one from the first module wins,
+ * the same way as when looking for components in the modules one by one.
+ * <p>
+ * Besides exact lookups the catalog answers prefix and fuzzy queries, see {@link #find(Kind, String, String, int)}.
+ */
+public class ComponentIndex
+{
+    public enum Kind
+    {
+        PAGE("pages"), COMPONENT("components"), MIXIN("mixins");
+        
+        private final String subpackage;
+        
+        private Kind(String subpackage)
+        {
+            this.subpackage = subpackage;
+        }
+        
+        public String getSubpackage()
+        {
+            return subpackage;
+        }
+    }
+    
+    /**
+     * Root package of the application or of a library mapping,
+     * together with the class path roots where its classes are looked for.
+     */
+    private static class ComponentRoot
+    {
+        //  Name of the module class, module instances are replaced on every refresh of the project
+        private final String moduleClassName;
+        private final String libraryPrefix;
+        private final String rootPackage;
+        private final List<IPackageFragmentRoot> fragmentRoots;
+        
+        public ComponentRoot(TapestryModule module, String libraryPrefix, String rootPackage, List<IPackageFragmentRoot> fragmentRoots)
+        {
+            this.moduleClassName = module.getModuleClass().getFullyQualifiedName();
+            this.libraryPrefix = libraryPrefix;
+            this.rootPackage = rootPackage;
+            this.fragmentRoots = fragmentRoots;
+        }
+        
+        /**
+         * @return Kind of classes in the package, or <code>null</code> if it's not a pages,
+         *         components or mixins package of this root or their sub-package.
+         */
+        public Kind getKind(String packageName)
+        {
+            for (Kind kind : Kind.values())
+            {
+                String kindPackage = rootPackage + "." + kind.subpackage;
+                
+                if (packageName.equals(kindPackage) || packageName.startsWith(kindPackage + "."))
+                {
+                    return kind;
+                }
+            }
+            
+            return null;
+        }
+        
+        /**
+         * @return Path of the class relative to the package of its kind.
+         */
+        public String getPath(Kind kind, String packageName, String className)
+        {
+            String kindPackage = rootPackage + "." + kind.subpackage;
+            
+            return packageName.length() == kindPackage.length()
+                 ? className
+                 : packageName.substring(kindPackage.length() + 1).replace('.', '/') + "/" + className;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof ComponentRoot))
+            {
+                return false;
+            }
+            
+            ComponentRoot other = (ComponentRoot) obj;
+            
+            return libraryPrefix.equalsIgnoreCase(other.libraryPrefix)
+                && rootPackage.equals(other.rootPackage)
+                && fragmentRoots.equals(other.fragmentRoots);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return libraryPrefix.toLowerCase().hashCode() * 31 + rootPackage.hashCode();
+        }
+    }
+    
+    /**
+     * Page, component or mixin class in the catalog.
+     */
+    public static class Entry
+    {
+        private final IJavaElement element;
+        private final Kind kind;
+        private final ComponentRoot root;
+        private final String path;
+        
+        //  Lower ranks win: position of the root first, exact names before aliases
+        private final int rank;
+        
+        private Entry(IJavaElement element, Kind kind, ComponentRoot root, String path, int rank)
+        {
+            this.element = element;
+            this.kind = kind;
+            this.root = root;
+            this.path = path;
+            this.rank = rank;
+        }
+        
+        public Kind getKind()
+        {
+            return kind;
+        }
+        
+        /**
+         * @return Fully qualified name of the class of the module that contributes this class.
+         */
+        public String getModuleClassName()
+        {
+            return root.moduleClassName;
+        }
+        
+        /**
+         * @return Library prefix, or empty string for classes of the application.
+         */
+        public String getLibraryPrefix()
+        {
+            return root.libraryPrefix;
+        }
+        
+        /**
+         * @return Name of the class relative to the package of its kind, with '/' as separator, i.e. <code>user/EditUser</code>.
+         */
+        public String getPath()
+        {
+            return path;
+        }
+        
+        /**
+         * @return Name as it's used in templates, i.e. <code>core/Form</code> or <code>user/EditUser</code>.
+         */
+        public String getName()
+        {
+            return root.libraryPrefix.length() == 0
+                 ? path
+                 : root.libraryPrefix + "/" + path;
+        }
+        
+        public IJavaElement getElement()
+        {
+            return element;
+        }
+        
+        public TapestryContext createContext()
+        {
+            if (element instanceof IClassFile)
+            {
+                return TapestryUtils.createTapestryContext((IClassFile) element);
+            }
+            
+            IResource resource = element.getResource();
+            
+            return resource instanceof IFile
+                 ? TapestryUtils.createTapestryContext((IFile) resource)
+                 : null;
+        }
+        
+        private boolean isAlias()
+        {
+            return rank % 2 != 0;
+        }
+    }
+    
+    private static class Match implements Comparable<Match>
+    {
+        private final Entry entry;
+        private final int score;
+        
+        public Match(Entry entry, int score)
+        {
+            this.entry = entry;
+            this.score = score;
+        }
+        
+        @Override
+        public int compareTo(Match other)
+        {
+            return score != other.score
+                 ? score - other.score
+                 : entry.rank - other.entry.rank;
+        }
+    }
+    
+    //  Query matches, best first
+    private static final int MATCH_EXACT = 0;
+    private static final int MATCH_PREFIX = 1;
+    private static final int MATCH_NAME_PREFIX = 2;
+    private static final int MATCH_FUZZY = 3;
+    private static final int NO_MATCH = -1;
+    
+    private final List<ComponentRoot> roots;
+    
+    //  Sorted, so that prefix queries only look at the matching range of keys
+    private final TreeMap<String, List<Entry>> entries = new TreeMap<String, List<Entry>>();
+    
+    private ComponentIndex(List<ComponentRoot> roots)
+    {
+        this.roots = roots;
+    }
+    
+    /**
+     * Creates the index for the given modules. Classes are not collected yet, see {@link #build(IProgressMonitor)}.
+     */
+    public static ComponentIndex create(List<TapestryModule> modules)
+    {
+        return new ComponentIndex(findComponentRoots(modules));
+    }
+    
+    private static List<ComponentRoot> findComponentRoots(List<TapestryModule> modules)
+    {
+        List<ComponentRoot> roots = new ArrayList<ComponentRoot>();
+        
+        for (TapestryModule module : modules)
+        {
+            List<IPackageFragmentRoot> fragmentRoots = getFragmentRoots(module);
+            
+            if (module.isAppModule())
+            {
+                String appPackage = TapestryUtils.getAppPackage(module.getEclipseProject());
+                
+                if (appPackage != null)
+                {
+                    roots.add(new ComponentRoot(module, "", appPackage, fragmentRoots));
+                }
+            }
+            
+            try
+            {
+                for (LibraryMapping mapping : module.libraryMappings())
+                {
+                    if (mapping.getPathPrefix() != null && mapping.getRootPackage() != null)
+                    {
+                        roots.add(new ComponentRoot(module, mapping.getPathPrefix(),
+                                mapping.getRootPackage(), fragmentRoots));
+                    }
+                }
+            }
+            catch (JavaModelException e)
+            {
+                Activator.getDefault().logError("Error getting library mappings of " + module.getName(), e);
+            }
+        }
+        
+        return roots;
+    }
+    
+    private static List<IPackageFragmentRoot> getFragmentRoots(TapestryModule module)
+    {
+        List<IPackageFragmentRoot> fragmentRoots = new ArrayList<IPackageFragmentRoot>();
+        
+        if (module instanceof LocalTapestryModule)
+        {
+            fragmentRoots.addAll(ProjectTopology.get(
+                    module.getModuleClass().getJavaProject().getProject()).getSourceRoots());
+        }
+        else
+        {
+            IPackageFragmentRoot root = (IPackageFragmentRoot)
+                    module.getModuleClass().getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+            
+            if (root != null)
+            {
+                fragmentRoots.add(root);
+            }
+        }
+        
+        return fragmentRoots;
+    }
+    
+    /**
+     * @return <code>true</code> if classes of the given modules are looked for in the same places as in this index,
+     *         so the index is still valid for them.
+     */
+    public boolean hasSameRoots(List<TapestryModule> modules)
+    {
+        return roots.equals(findComponentRoots(modules));
+    }
+    
+    /**
+     * Collects page, component and mixin classes of all roots.
+     */
+    public void build(IProgressMonitor monitor)
+    {
+        for (int i = 0; i < roots.size(); i++)
+        {
+            ComponentRoot root = roots.get(i);
+            
+            for (IPackageFragmentRoot fragmentRoot : root.fragmentRoots)
+            {
+                if (monitor.isCanceled())
+                {
+                    throw new OperationCanceledException();
+                }
+                
+                try
+                {
+                    for (IJavaElement child : fragmentRoot.getChildren())
+                    {
+                        if (!(child instanceof IPackageFragment)
+                                || root.getKind(child.getElementName()) == null)
+                        {
+                            continue;
+                        }
+                        
+                        IPackageFragment packageFragment = (IPackageFragment) child;
+                        
+                        IJavaElement[] units = fragmentRoot.getKind() == IPackageFragmentRoot.K_SOURCE
+                                             ? packageFragment.getCompilationUnits()
+                                             : packageFragment.getClassFiles();
+                        
+                        for (IJavaElement unit : units)
+                        {
+                            add(i, root, unit);
+                        }
+                    }
+                }
+                catch (JavaModelException e)
+                {
+                    Activator.getDefault().logError("Error indexing components of " + fragmentRoot.getElementName(), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds the compilation unit or class file to the index if it's a page, component or mixin class.
+     * For a package fragment, replaces entries of the package with its current classes.
+     * 
+     * @return <code>true</code> if the index has changed.
+     */
+    public boolean add(IJavaElement unit)
+    {
+        if (unit instanceof IPackageFragment)
+        {
+            return addPackage((IPackageFragment) unit);
+        }
+        
+        IPackageFragmentRoot fragmentRoot = (IPackageFragmentRoot) unit.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        
+        boolean changed = false;
+        
+        for (int i = 0; i < roots.size(); i++)
+        {
+            ComponentRoot root = roots.get(i);
+            
+            if (root.fragmentRoots.contains(fragmentRoot))
+            {
+                changed |= add(i, root, unit);
+            }
+        }
+        
+        return changed;
+    }
+    
+    private boolean addPackage(IPackageFragment packageFragment)
+    {
+        //  Package may have been added before with other classes, i.e. when it was moved back and forth
+        boolean changed = remove(packageFragment);
+        
+        try
+        {
+            IJavaElement[] units = packageFragment.getKind() == IPackageFragmentRoot.K_SOURCE
+                                 ? packageFragment.getCompilationUnits()
+                                 : packageFragment.getClassFiles();
+            
+            for (IJavaElement unit : units)
+            {
+                changed |= add(unit);
+            }
+        }
+        catch (JavaModelException e)
+        {
+            Activator.getDefault().logError("Error indexing components of " + packageFragment.getElementName(), e);
+        }
+        
+        return changed;
+    }
+    
+    private synchronized boolean add(int rootIndex, ComponentRoot root, IJavaElement unit)
+    {
+        String className = getClassName(unit);
+        
+        if (className == null)
+        {
+            return false;
+        }
+        
+        String packageName = unit.getParent().getElementName();
+        
+        Kind kind = root.getKind(packageName);
+        
+        if (kind == null)
+        {
+            return false;
+        }
+        
+        String path = root.getPath(kind, packageName, className);
+        
+        boolean changed = put(getKey(kind, root.libraryPrefix, path), new Entry(unit, kind, root, path, rootIndex * 2));
+        
+        //  Tapestry allows to omit name of the folder if the class name ends with it
+        int index = path.lastIndexOf('/');
+        
+        if (index > 0)
+        {
+            String folderName = path.substring(path.lastIndexOf('/', index - 1) + 1, index).toLowerCase();
+            String fileName = path.substring(index + 1).toLowerCase();
+            
+            if (fileName.length() > folderName.length() && fileName.endsWith(folderName))
+            {
+                String alias = path.substring(0, path.length() - folderName.length());
+                
+                changed |= put(getKey(kind, root.libraryPrefix, alias), new Entry(unit, kind, root, alias, rootIndex * 2 + 1));
+            }
+        }
+        
+        return changed;
+    }
+    
+    private static String getKey(Kind kind, String libraryPrefix, String path)
+    {
+        return kind.subpackage + "|" + libraryPrefix.toLowerCase() + ":" + path.replace('.', '/').toLowerCase();
+    }
+    
+    private boolean put(String key, Entry entry)
+    {
+        List<Entry> candidates = entries.get(key);
+        
+        if (candidates == null)
+        {
+            candidates = new ArrayList<Entry>(1);
+            
+            entries.put(key, candidates);
+        }
+        
+        for (Entry candidate : candidates)
+        {
+            if (candidate.element.equals(entry.element))
+            {
+                return false;
+            }
+        }
+        
+        int position = 0;
+        
+        while (position < candidates.size() && candidates.get(position).rank <= entry.rank)
+        {
+            position++;
+        }
+        
+        candidates.add(position, entry);
+        
+        return true;
+    }
+    
+    private static String getClassName(IJavaElement unit)
+    {
+        String name = unit.getElementName();
+        
+        String extension = unit instanceof ICompilationUnit ? ".java" : ".class";
+        
+        if (!name.endsWith(extension))
+        {
+            return null;
+        }
+        
+        name = name.substring(0, name.length() - extension.length());
+        
+        //  Skip inner and anonymous classes
+        return name.indexOf('$') < 0 ? name : null;
+    }
+    
+    /**
+     * @return Fully qualified name of the class of the compilation unit or class file,
+     *         or <code>null</code> for inner and anonymous classes.
+     */
+    public static String getQualifiedName(IJavaElement unit)
+    {
+        String className = getClassName(unit);
+        
+        if (className == null)
+        {
+            return null;
+        }
+        
+        String packageName = unit.getParent().getElementName();
+        
+        return packageName.length() == 0 ? className : packageName + "." + className;
+    }
+    
+    /**
+     * Removes all entries of the compilation unit or class file from the index.
+     * For a package fragment, removes entries of all its classes.
+     * 
+     * @return <code>true</code> if the index has changed.
+     */
+    public synchronized boolean remove(IJavaElement unit)
+    {
+        boolean changed = false;
+        
+        for (Iterator<List<Entry>> iterator = entries.values().iterator(); iterator.hasNext();)
+        {
+            List<Entry> candidates = iterator.next();
+            
+            for (Iterator<Entry> candidateIterator = candidates.iterator(); candidateIterator.hasNext();)
+            {
+                IJavaElement element = candidateIterator.next().element;
+                
+                if (element.equals(unit) || unit.equals(element.getParent()))
+                {
+                    candidateIterator.remove();
+                    
+                    changed = true;
+                }
+            }
+            
+            if (candidates.isEmpty())
+            {
+                iterator.remove();
+            }
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * @param libraryPrefix Library prefix, or empty string for components of the application.
+     * @param componentPath Name of the component without prefix, with either '.' or '/' as separator.
+     * @return Context of the component class, or <code>null</code> if there's no such component in the index.
+     */
+    public TapestryContext findComponentContext(String libraryPrefix, String componentPath)
+    {
+        Entry entry = findEntry(Kind.COMPONENT, libraryPrefix, componentPath);
+        
+        return entry != null ? entry.createContext() : null;
+    }
+    
+    /**
+     * Resolves the name of the component or mixin as it's written in templates, i.e. <code>Grid</code>,
+     * <code>core/Grid</code> or <code>user.EditUser</code>.
+     * <p>
+     * The part of the name before the first '.' or '/' is tried as library prefix first, then the whole name
+     * is looked up in the application, and then in the <code>core</code> library.
+     *
+     * @return Class with the given name, or <code>null</code> if there's no such class in the index.
+     */
+    public Entry resolve(Kind kind, String name)
+    {
+        int index = name.indexOf('.');
+        if (index < 0)
+        {
+            index = name.indexOf('/');
+        }
+        
+        Entry entry = null;
+        
+        if (index > 0 && index + 1 < name.length())
+        {
+            entry = findEntry(kind, name.substring(0, index), name.substring(index + 1));
+        }
+        
+        if (entry == null)
+        {
+            entry = findEntry(kind, "", name);
+        }
+        
+        if (entry == null)
+        {
+            entry = findEntry(kind, "core", name);
+        }
+        
+        return entry;
+    }
+    
+    /**
+     * @param className Fully qualified name of the class.
+     * @return Class with the given name, or <code>null</code> if it's not a class of the given kind.
+     */
+    public synchronized Entry findClass(Kind kind, String className)
+    {
+        String from = kind.subpackage + "|";
+        
+        for (List<Entry> candidates : entries.subMap(from, from + Character.MAX_VALUE).values())
+        {
+            for (Entry candidate : candidates)
+            {
+                if (!candidate.isAlias() && className.equals(getQualifiedName(candidate.element)))
+                {
+                    return candidate;
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @param libraryPrefix Library prefix, or empty string for classes of the application.
+     * @param path Name without prefix, with either '.' or '/' as separator, compared ignoring case.
+     * @return Class with the given name, or <code>null</code> if there's no such class in the index.
+     */
+    public synchronized Entry findEntry(Kind kind, String libraryPrefix, String path)
+    {
+        List<Entry> candidates = entries.get(getKey(kind, libraryPrefix, path));
+        
+        return candidates != null ? candidates.get(0) : null;
+    }
+    
+    /**
+     * Finds classes of the given kind whose name matches the query.
+     * <p>
+     * Query is compared ignoring case with the path of the class. Exact matches come first, then paths
+     * that start with the query, then paths whose last segment starts with it, and then paths that contain
+     * all characters of the query in the same order, i.e. <code>usred</code> for <code>user/EditUser</code>.
+     *
+     * @param libraryPrefix Library prefix, empty string for classes of the application, or <code>null</code>
+     *                      to look in all libraries.
+     * @param query Name or part of the name with either '.' or '/' as separator, empty string matches everything.
+     * @param limit Maximum number of entries to return.
+     * @return Matching classes, best matches first. Aliases are only returned for exact matches.
+     */
+    public List<Entry> find(Kind kind, String libraryPrefix, String query, int limit)
+    {
+        String normalizedQuery = query.replace('.', '/').toLowerCase();
+        
+        String from = kind.subpackage + "|" + (libraryPrefix != null ? libraryPrefix.toLowerCase() + ":" : "");
+        
+        List<Match> matches = new ArrayList<Match>();
+        
+        synchronized (this)
+        {
+            for (Map.Entry<String, List<Entry>> mapEntry : entries.subMap(from, from + Character.MAX_VALUE).entrySet())
+            {
+                String key = mapEntry.getKey();
+                
+                int score = match(key.substring(key.indexOf(':') + 1), normalizedQuery);
+                
+                if (score == NO_MATCH)
+                {
+                    continue;
+                }
+                
+                Entry entry = mapEntry.getValue().get(0);
+                
+                if (entry.isAlias() && score != MATCH_EXACT)
+                {
+                    continue;
+                }
+                
+                matches.add(new Match(entry, score));
+            }
+        }
+        
+        //  Stable sort, and keys are sorted already, so within the same score the order is alphabetical
+        Collections.sort(matches);
+        
+        List<Entry> result = new ArrayList<Entry>();
+        
+        Set<IJavaElement> elements = new HashSet<IJavaElement>();
+        
+        for (Match match : matches)
+        {
+            if (result.size() >= limit)
+            {
+                break;
+            }
+            
+            //  Exact alias and the full name may both match
+            if (elements.add(match.entry.element))
+            {
+                result.add(match.entry);
+            }
+        }
+        
+        return result;
+    }
+    
+    private static int match(String path, String query)
+    {
+        if (path.equals(query))
+        {
+            return MATCH_EXACT;
+        }
+        
+        if (path.startsWith(query))
+        {
+            return MATCH_PREFIX;
+        }
+        
+        if (path.startsWith(query, path.lastIndexOf('/') + 1))
+        {
+            return MATCH_NAME_PREFIX;
+        }
+        
+        int position = 0;
+        
+        for (int i = 0; i < query.length(); i++)
+        {
+            position = path.indexOf(query.charAt(i), position);
+            
+            if (position < 0)
+            {
+                return NO_MATCH;
+            }
+            
+            position++;
+        }
+        
+        return MATCH_FUZZY;
+    }
+}
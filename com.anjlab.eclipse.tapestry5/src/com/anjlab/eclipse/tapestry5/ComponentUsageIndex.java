@@ -0,0 +1,839 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Annotation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ImportDeclaration;
+import org.eclipse.jdt.core.dom.MemberValuePair;
+import org.eclipse.jdt.core.dom.NormalAnnotation;
+import org.eclipse.jdt.core.dom.PackageDeclaration;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.Type;
+
+import com.anjlab.eclipse.tapestry5.ComponentIndex.Kind;
+import com.anjlab.eclipse.tapestry5.TemplateTokenizer.TokenType;
+
+/**
+ * Usages of components and mixins in the templates and Java files of a project:
+ * <code>&lt;t:grid&gt;</code> elements, <code>t:type</code> and <code>t:mixins</code> attributes,
+ * and <code>@Component</code> fields.
+ * <p>
+ * Usages are kept both by file, to answer what a page or component uses, and by the name they refer to,
+ * to answer where a component is used. Names are resolved to classes with the {@link ComponentIndex}
+ * when usages are added and again when the component index changes, see {@link #setComponentIndex(ComponentIndex)},
+ * so that finding usages of a class is a lookup.
+ * <p>
+ * The index is built once by {@link #build(IProgressMonitor)}, after that only the files reported
+ * by resource deltas are scanned again, see {@link #update(IProgressMonitor)}.
+ */
+public class ComponentUsageIndex
+{
+    /**
+     * Reference to a component or mixin from a template or Java file.
+     */
+    public static class Usage
+    {
+        private final IFile file;
+        private final Kind kind;
+        private final String name;
+        private final boolean className;
+        private final int offset;
+        private final int length;
+        
+        private Usage(IFile file, Kind kind, String name, boolean className, int offset, int length)
+        {
+            this.file = file;
+            this.kind = kind;
+            this.name = name;
+            this.className = className;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        public IFile getFile()
+        {
+            return file;
+        }
+        
+        public Kind getKind()
+        {
+            return kind;
+        }
+        
+        /**
+         * @return Name as it's written, i.e. <code>core/Grid</code>, or fully qualified class name,
+         *         see {@link #isClassName()}.
+         */
+        public String getName()
+        {
+            return name;
+        }
+        
+        /**
+         * @return <code>true</code> for <code>@Component</code> fields without explicit type,
+         *         which refer to the component by the class of the field.
+         */
+        public boolean isClassName()
+        {
+            return className;
+        }
+        
+        /**
+         * @return Offset of the reference in the file.
+         */
+        public int getOffset()
+        {
+            return offset;
+        }
+        
+        public int getLength()
+        {
+            return length;
+        }
+        
+        private String getKey()
+        {
+            return className
+                 ? "class|" + name
+                 : kind.getSubpackage() + "|" + name.replace('.', '/').toLowerCase();
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Usage))
+            {
+                return false;
+            }
+            
+            Usage other = (Usage) obj;
+            
+            return file.equals(other.file)
+                && kind == other.kind
+                && name.equals(other.name)
+                && className == other.className
+                && offset == other.offset
+                && length == other.length;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return file.hashCode() * 31 + offset;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return file.getProjectRelativePath().toPortableString() + " (" + name + ")";
+        }
+    }
+    
+    private static final String COMPONENT_ANNOTATION = "org.apache.tapestry5.annotations.Component";
+    
+    //  Elements of Tapestry namespace that are not components
+    private static final Set<String> TEMPLATE_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "body", "container", "block", "parameter", "content", "remove", "extend", "extension-point", "replace"));
+    
+    private final IProject project;
+    
+    //  Usages by full path of the file
+    private final Map<IPath, List<Usage>> usagesByFile = new HashMap<IPath, List<Usage>>();
+    
+    //  Usages by the name they refer to, see Usage.getKey()
+    private final Map<String, List<Usage>> usagesByKey = new HashMap<String, List<Usage>>();
+    
+    //  Class names of the resolved keys
+    private final Map<String, String> classNamesByKey = new HashMap<String, String>();
+    
+    //  Keys that resolve to the class by the class name
+    private final Map<String, List<String>> keysByClassName = new HashMap<String, List<String>>();
+    
+    private ComponentIndex componentIndex;
+    
+    //  Files changed since the last update with the number of the change, so that build()
+    //  only forgets the changes recorded before it started
+    private final Map<IFile, Long> changedFiles = new LinkedHashMap<IFile, Long>();
+    
+    private long changeCount;
+    
+    private boolean built;
+    
+    public ComponentUsageIndex(IProject project)
+    {
+        this.project = project;
+    }
+    
+    /**
+     * Scans all templates and Java files in the source folders and web application context roots of the project.
+     */
+    public void build(IProgressMonitor monitor)
+    {
+        long buildChangeCount;
+        
+        synchronized (this)
+        {
+            //  Changes recorded from now on may be missed by the scan and will be applied by update()
+            buildChangeCount = changeCount;
+        }
+        
+        final List<IFile> files = new ArrayList<IFile>();
+        
+        ProjectTopology topology = ProjectTopology.get(project);
+        
+        List<IContainer> roots = new ArrayList<IContainer>(topology.getSourceFolders());
+        roots.addAll(topology.getWebapps());
+        
+        for (IContainer root : roots)
+        {
+            if (!project.equals(root.getProject()))
+            {
+                //  Source folders of the projects this one depends on are indexed by their own projects
+                continue;
+            }
+            
+            try
+            {
+                root.accept(new IResourceProxyVisitor()
+                {
+                    @Override
+                    public boolean visit(IResourceProxy proxy) throws CoreException
+                    {
+                        if (proxy.getType() == IResource.FILE && isIndexed(proxy.getName()))
+                        {
+                            files.add((IFile) proxy.requestResource());
+                        }
+                        return true;
+                    }
+                }, IResource.NONE);
+            }
+            catch (CoreException e)
+            {
+                Activator.getDefault().logWarning("Error indexing usages in " + root.getFullPath(), e);
+            }
+        }
+        
+        Map<IPath, List<Usage>> usagesByFile = new HashMap<IPath, List<Usage>>();
+        
+        for (IFile file : files)
+        {
+            if (monitor.isCanceled())
+            {
+                throw new OperationCanceledException();
+            }
+            
+            usagesByFile.put(file.getFullPath(), scan(file));
+        }
+        
+        synchronized (this)
+        {
+            this.usagesByFile.clear();
+            this.usagesByKey.clear();
+            this.classNamesByKey.clear();
+            this.keysByClassName.clear();
+            
+            for (List<Usage> usages : usagesByFile.values())
+            {
+                add(usages);
+            }
+            
+            for (Iterator<Long> iterator = changedFiles.values().iterator(); iterator.hasNext();)
+            {
+                if (iterator.next() <= buildChangeCount)
+                {
+                    iterator.remove();
+                }
+            }
+            
+            built = true;
+        }
+        
+        update(monitor);
+    }
+    
+    private static boolean isIndexed(String fileName)
+    {
+        return fileName.endsWith(".tml") || fileName.endsWith(".java");
+    }
+    
+    /**
+     * Records templates and Java files of the project changed by the resource delta of the workspace.
+     *
+     * @return <code>true</code> if there are changes to be applied by {@link #update(IProgressMonitor)}.
+     */
+    public boolean resourceChanged(IResourceDelta workspaceDelta)
+    {
+        IResourceDelta projectDelta = workspaceDelta.findMember(project.getFullPath());
+        
+        if (projectDelta == null)
+        {
+            return hasChanges();
+        }
+        
+        final ProjectTopology topology = ProjectTopology.get(project);
+        
+        final List<IFile> files = new ArrayList<IFile>();
+        
+        try
+        {
+            projectDelta.accept(new IResourceDeltaVisitor()
+            {
+                @Override
+                public boolean visit(IResourceDelta delta) throws CoreException
+                {
+                    IResource resource = delta.getResource();
+                    
+                    if (resource.getType() != IResource.FILE)
+                    {
+                        return true;
+                    }
+                    
+                    if (isIndexed(resource.getName())
+                            && (delta.getKind() != IResourceDelta.CHANGED
+                                || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0)
+                            && topology.findRoot(resource) != null)
+                    {
+                        files.add((IFile) resource);
+                    }
+                    
+                    return false;
+                }
+            });
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logError("Error processing resource delta", e);
+        }
+        
+        synchronized (this)
+        {
+            //  Changes are recorded during the build too, the scan may have already visited the file
+            for (IFile file : files)
+            {
+                changedFiles.remove(file);
+                changedFiles.put(file, ++changeCount);
+            }
+            
+            return !changedFiles.isEmpty();
+        }
+    }
+    
+    public synchronized boolean isBuilt()
+    {
+        return built;
+    }
+    
+    public synchronized boolean hasChanges()
+    {
+        return !changedFiles.isEmpty();
+    }
+    
+    /**
+     * Scans the files recorded by {@link #resourceChanged(IResourceDelta)} again.
+     *
+     * Changes are kept until the index is built.
+     *
+     * @return <code>true</code> if any files were scanned.
+     */
+    public boolean update(IProgressMonitor monitor)
+    {
+        List<IFile> files;
+        
+        synchronized (this)
+        {
+            if (!built)
+            {
+                return false;
+            }
+            
+            files = new ArrayList<IFile>(changedFiles.keySet());
+            
+            changedFiles.clear();
+        }
+        
+        for (IFile file : files)
+        {
+            if (monitor.isCanceled())
+            {
+                synchronized (this)
+                {
+                    //  Keep the rest for the next update
+                    for (IFile rest : files.subList(files.indexOf(file), files.size()))
+                    {
+                        if (!changedFiles.containsKey(rest))
+                        {
+                            changedFiles.put(rest, ++changeCount);
+                        }
+                    }
+                }
+                throw new OperationCanceledException();
+            }
+            
+            List<Usage> usages = file.exists() ? scan(file) : Collections.<Usage>emptyList();
+            
+            synchronized (this)
+            {
+                remove(file.getFullPath());
+                
+                if (!usages.isEmpty())
+                {
+                    add(usages);
+                }
+            }
+        }
+        
+        return !files.isEmpty();
+    }
+    
+    private void add(List<Usage> usages)
+    {
+        if (usages.isEmpty())
+        {
+            return;
+        }
+        
+        usagesByFile.put(usages.get(0).getFile().getFullPath(), usages);
+        
+        for (Usage usage : usages)
+        {
+            String key = usage.getKey();
+            
+            List<Usage> keyUsages = usagesByKey.get(key);
+            
+            if (keyUsages == null)
+            {
+                keyUsages = new ArrayList<Usage>(2);
+                usagesByKey.put(key, keyUsages);
+                
+                resolve(key, usage);
+            }
+            
+            keyUsages.add(usage);
+        }
+    }
+    
+    private void remove(IPath path)
+    {
+        List<Usage> usages = usagesByFile.remove(path);
+        
+        if (usages == null)
+        {
+            return;
+        }
+        
+        for (Usage usage : usages)
+        {
+            String key = usage.getKey();
+            
+            List<Usage> keyUsages = usagesByKey.get(key);
+            
+            if (keyUsages != null)
+            {
+                keyUsages.remove(usage);
+                
+                if (keyUsages.isEmpty())
+                {
+                    usagesByKey.remove(key);
+                    
+                    unresolve(key);
+                }
+            }
+        }
+    }
+    
+    private void resolve(String key, Usage usage)
+    {
+        String className;
+        
+        if (usage.isClassName())
+        {
+            className = usage.getName();
+        }
+        else
+        {
+            ComponentIndex.Entry entry = componentIndex != null
+                                       ? componentIndex.resolve(usage.getKind(), usage.getName())
+                                       : null;
+            
+            className = entry != null ? ComponentIndex.getQualifiedName(entry.getElement()) : null;
+        }
+        
+        if (className == null)
+        {
+            return;
+        }
+        
+        classNamesByKey.put(key, className);
+        
+        List<String> keys = keysByClassName.get(className);
+        
+        if (keys == null)
+        {
+            keys = new ArrayList<String>(1);
+            keysByClassName.put(className, keys);
+        }
+        
+        keys.add(key);
+    }
+    
+    private void unresolve(String key)
+    {
+        String className = classNamesByKey.remove(key);
+        
+        if (className == null)
+        {
+            return;
+        }
+        
+        List<String> keys = keysByClassName.get(className);
+        
+        keys.remove(key);
+        
+        if (keys.isEmpty())
+        {
+            keysByClassName.remove(className);
+        }
+    }
+    
+    /**
+     * Resolves names of all usages with the component index, should be called when the component index
+     * is replaced or classes are added to or removed from it.
+     * 
+     * @param componentIndex Current component index of the project, or <code>null</code> if there's none.
+     */
+    public synchronized void setComponentIndex(ComponentIndex componentIndex)
+    {
+        this.componentIndex = componentIndex;
+        
+        classNamesByKey.clear();
+        keysByClassName.clear();
+        
+        for (Map.Entry<String, List<Usage>> entry : usagesByKey.entrySet())
+        {
+            resolve(entry.getKey(), entry.getValue().get(0));
+        }
+    }
+    
+    /**
+     * @return Components and mixins used by the file, in the order they appear in the file.
+     */
+    public synchronized List<Usage> findUses(IFile file)
+    {
+        List<Usage> usages = usagesByFile.get(file.getFullPath());
+        
+        return usages != null
+             ? new ArrayList<Usage>(usages)
+             : Collections.<Usage>emptyList();
+    }
+    
+    /**
+     * @param className Fully qualified name of the page, component or mixin class.
+     * @return Usages of the class, either by name resolved with the component index or by class name.
+     */
+    public synchronized List<Usage> findUsages(String className)
+    {
+        List<String> keys = keysByClassName.get(className);
+        
+        if (keys == null)
+        {
+            return Collections.emptyList();
+        }
+        
+        List<Usage> result = new ArrayList<Usage>();
+        
+        for (String key : keys)
+        {
+            result.addAll(usagesByKey.get(key));
+        }
+        
+        return result;
+    }
+    
+    private List<Usage> scan(IFile file)
+    {
+        try
+        {
+            return file.getName().endsWith(".tml")
+                 ? scanTemplate(file)
+                 : scanJavaFile(file);
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logWarning("Error indexing usages in " + file.getFullPath(), e);
+            
+            return Collections.emptyList();
+        }
+    }
+    
+    private List<Usage> scanTemplate(final IFile file) throws CoreException
+    {
+        final String text = TapestryUtils.readToEnd(file);
+        
+        final List<Usage> usages = new ArrayList<Usage>();
+        
+        if (text == null)
+        {
+            return usages;
+        }
+        
+        new TemplateTokenizer(text).tokenize(new TemplateTokenizer.Handler()
+        {
+            private TokenType previousType;
+            
+            //  Start tag of the element from Tapestry namespace is being tokenized
+            private boolean tapestryElement;
+            
+            //  Local name of the last attribute if it's a component type or mixins
+            private String attribute;
+            
+            @Override
+            public void token(TokenType type, int start, int end)
+            {
+                switch (type)
+                {
+                case START_TAG:
+                    
+                    tapestryElement = false;
+                    attribute = null;
+                    break;
+                
+                case ATTRIBUTE_NAME:
+                    
+                    attribute = tapestryElement && "mixins".equals(text.substring(start, end)) ? "mixins" : null;
+                    break;
+                
+                case TAPESTRY_NAME:
+                    
+                    String localName = text.substring(start, end);
+                    
+                    if (previousType == TokenType.START_TAG)
+                    {
+                        tapestryElement = true;
+                        
+                        if (!TEMPLATE_ELEMENTS.contains(localName.toLowerCase()))
+                        {
+                            usages.add(new Usage(file, Kind.COMPONENT, localName, false, start, end - start));
+                        }
+                    }
+                    else if (previousType == TokenType.ATTRIBUTE_NAME)
+                    {
+                        attribute = "type".equals(localName) || "mixins".equals(localName) ? localName : null;
+                    }
+                    break;
+                
+                case ATTRIBUTE_VALUE:
+                    
+                    if ("type".equals(attribute))
+                    {
+                        addUsage(Kind.COMPONENT, start, end);
+                    }
+                    else if ("mixins".equals(attribute))
+                    {
+                        //  t:mixins="autocomplete, zone::before:autocomplete"
+                        int position = start;
+                        
+                        while (position < end)
+                        {
+                            int comma = indexOf(text, ",", position, end);
+                            
+                            int mixinEnd = comma < 0 ? end : comma;
+                            
+                            int constraint = indexOf(text, "::", position, mixinEnd);
+                            
+                            addUsage(Kind.MIXIN, position, constraint < 0 ? mixinEnd : constraint);
+                            
+                            position = mixinEnd + 1;
+                        }
+                    }
+                    attribute = null;
+                    break;
+                
+                default:
+                    
+                    break;
+                }
+                
+                previousType = type;
+            }
+            
+            private void addUsage(Kind kind, int start, int end)
+            {
+                while (start < end && Character.isWhitespace(text.charAt(start)))
+                {
+                    start++;
+                }
+                
+                while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+                {
+                    end--;
+                }
+                
+                if (start < end && !text.startsWith("${", start))
+                {
+                    usages.add(new Usage(file, kind, text.substring(start, end), false, start, end - start));
+                }
+            }
+        });
+        
+        return usages;
+    }
+    
+    private static int indexOf(String text, String value, int start, int end)
+    {
+        for (int i = start; i + value.length() <= end; i++)
+        {
+            if (text.startsWith(value, i))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private List<Usage> scanJavaFile(final IFile file) throws CoreException
+    {
+        final List<Usage> usages = new ArrayList<Usage>();
+        
+        String source = TapestryUtils.readToEnd(file);
+        
+        if (source == null
+                || (source.indexOf("@Component") < 0 && source.indexOf("@" + COMPONENT_ANNOTATION) < 0))
+        {
+            //  Don't parse classes without component fields
+            return usages;
+        }
+        
+        final CompilationUnit compilationUnit = EclipseUtils.parse(source);
+        
+        compilationUnit.accept(new ASTVisitor()
+        {
+            @Override
+            public boolean visit(FieldDeclaration node)
+            {
+                for (Object modifier : node.modifiers())
+                {
+                    if (!(modifier instanceof Annotation) || !isComponentAnnotation((Annotation) modifier))
+                    {
+                        continue;
+                    }
+                    
+                    Annotation annotation = (Annotation) modifier;
+                    
+                    String componentType = getTypeAttribute(annotation);
+                    
+                    //  One usage for all fields of the declaration, they share the annotation
+                    if (componentType != null && componentType.length() > 0)
+                    {
+                        usages.add(new Usage(file, Kind.COMPONENT, componentType, false,
+                                annotation.getStartPosition(), annotation.getLength()));
+                    }
+                    else
+                    {
+                        usages.add(new Usage(file, Kind.COMPONENT, resolveClassName(compilationUnit,
+                                getTypeName(node.getType())), true,
+                                annotation.getStartPosition(), annotation.getLength()));
+                    }
+                }
+                return false;
+            }
+        });
+        
+        return usages;
+    }
+    
+    private static boolean isComponentAnnotation(Annotation annotation)
+    {
+        String name = annotation.getTypeName().getFullyQualifiedName();
+        
+        return COMPONENT_ANNOTATION.equals(name) || "Component".equals(name);
+    }
+    
+    private static String getTypeAttribute(Annotation annotation)
+    {
+        if (annotation.isNormalAnnotation())
+        {
+            for (Object value : ((NormalAnnotation) annotation).values())
+            {
+                MemberValuePair pair = (MemberValuePair) value;
+                
+                if ("type".equals(pair.getName().getIdentifier()) && pair.getValue() instanceof StringLiteral)
+                {
+                    return ((StringLiteral) pair.getValue()).getLiteralValue();
+                }
+            }
+        }
+        return null;
+    }
+    
+    private static String getTypeName(Type type)
+    {
+        if (type.isParameterizedType())
+        {
+            return getTypeName(((ParameterizedType) type).getType());
+        }
+        
+        if (type.isSimpleType())
+        {
+            return ((SimpleType) type).getName().getFullyQualifiedName();
+        }
+        
+        return type.toString();
+    }
+    
+    /**
+     * Resolves the type name of the field with the imports of the compilation unit without searching the class path,
+     * names that are not imported are assumed to be from the same package.
+     */
+    private static String resolveClassName(CompilationUnit compilationUnit, String typeName)
+    {
+        if (typeName.indexOf('.') >= 0)
+        {
+            //  Already qualified
+            return typeName;
+        }
+        
+        for (Object value : compilationUnit.imports())
+        {
+            ImportDeclaration declaration = (ImportDeclaration) value;
+            
+            String importName = declaration.getName().getFullyQualifiedName();
+            
+            if (!declaration.isOnDemand() && !declaration.isStatic() && importName.endsWith("." + typeName))
+            {
+                return importName;
+            }
+        }
+        
+        PackageDeclaration packageDeclaration = compilationUnit.getPackage();
+        
+        return packageDeclaration == null
+             ? typeName
+             : packageDeclaration.getName().getFullyQualifiedName() + "." + typeName;
+    }
+}
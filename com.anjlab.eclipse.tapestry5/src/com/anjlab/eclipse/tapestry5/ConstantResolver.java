@@ -0,0 +1,430 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ImportDeclaration;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+/**
+ * Resolves names used in the source code of module classes to values of <code>String</code> constants.
+ * <p>
+ * Names are looked up the same way the compiler would: fields of the type and its enclosing types,
+ * static imports, and for qualified names the type is resolved through the imports, the package
+ * of the type and <code>java.lang</code>. Only if that fails the project is searched for a field
+ * with this name. All results, including misses, are remembered until the declaring type changes,
+ * so the same constant is never looked up twice.
+ * <p>
+ * Changed compilation units are only queued by {@link #invalidate(ICompilationUnit)}, so that Java element deltas
+ * don't wait for the searches of a running lookup, and are forgotten before the next lookup.
+ */
+public class ConstantResolver
+{
+    private final IProject project;
+    
+    //  Keyed by 'declaring.Type#FIELD', null values are misses
+    private final Map<String, String> constants = new HashMap<String, String>();
+    
+    //  Keyed by 'project/fully.qualified.Name', null values are misses
+    private final Map<String, IType> types = new HashMap<String, IType>();
+    
+    //  Results of the project-wide search, keyed by the name as written in the source code
+    private final Map<String, IField> searchedFields = new HashMap<String, IField>();
+    
+    //  Compilation units that constants were looked up in, including misses
+    private final Set<ICompilationUnit> lookedUpUnits =
+            Collections.newSetFromMap(new ConcurrentHashMap<ICompilationUnit, Boolean>());
+    
+    private final Queue<ICompilationUnit> changedUnits = new ConcurrentLinkedQueue<ICompilationUnit>();
+    
+    public ConstantResolver(IProject project)
+    {
+        this.project = project;
+    }
+    
+    /**
+     * @param dependencies Receives the compilation unit or class file that declares the constant.
+     * @return Value of the constant, or <code>null</code> if the name doesn't refer to a <code>String</code> constant.
+     */
+    public synchronized String resolve(IType contextType, Name name, Collection<ITypeRoot> dependencies)
+    {
+        forgetChangedUnits();
+        
+        if (name.isQualifiedName())
+        {
+            QualifiedName qualifiedName = (QualifiedName) name;
+            
+            IType type = resolveType(contextType, qualifiedName.getQualifier());
+            
+            if (type != null)
+            {
+                String value = getConstant(type, qualifiedName.getName().getIdentifier());
+                
+                if (value != null)
+                {
+                    dependencies.add(type.getTypeRoot());
+                    return value;
+                }
+            }
+        }
+        else
+        {
+            String fieldName = ((SimpleName) name).getIdentifier();
+            
+            for (IType type = contextType; type != null; type = type.getDeclaringType())
+            {
+                String value = getConstant(type, fieldName);
+                
+                if (value != null)
+                {
+                    dependencies.add(type.getTypeRoot());
+                    return value;
+                }
+            }
+            
+            for (ImportDeclaration declaration : getImports(name))
+            {
+                if (!declaration.isStatic())
+                {
+                    continue;
+                }
+                
+                String importName = declaration.getName().getFullyQualifiedName();
+                
+                String typeName = declaration.isOnDemand()
+                                ? importName
+                                : importName.endsWith("." + fieldName)
+                                    ? importName.substring(0, importName.lastIndexOf('.'))
+                                    : null;
+                
+                if (typeName == null)
+                {
+                    continue;
+                }
+                
+                IType type = findType(contextType.getJavaProject(), typeName);
+                
+                if (type != null)
+                {
+                    String value = getConstant(type, fieldName);
+                    
+                    if (value != null)
+                    {
+                        dependencies.add(type.getTypeRoot());
+                        return value;
+                    }
+                }
+            }
+        }
+        
+        IField field = searchField(name);
+        
+        String value = getConstant(field);
+        
+        if (value != null)
+        {
+            dependencies.add(field.getTypeRoot());
+        }
+        
+        return value;
+    }
+    
+    private IType resolveType(IType contextType, Name typeName)
+    {
+        IJavaProject javaProject = contextType.getJavaProject();
+        
+        String name = typeName.getFullyQualifiedName();
+        
+        int dotIndex = name.indexOf('.');
+        
+        String firstSegment = dotIndex < 0 ? name : name.substring(0, dotIndex);
+        String rest = dotIndex < 0 ? "" : name.substring(dotIndex);
+        
+        List<String> candidates = new ArrayList<String>();
+        
+        if (dotIndex > 0)
+        {
+            candidates.add(name);
+        }
+        
+        for (IType type = contextType; type != null; type = type.getDeclaringType())
+        {
+            candidates.add(type.getFullyQualifiedName('.') + "." + name);
+        }
+        
+        List<ImportDeclaration> onDemandImports = new ArrayList<ImportDeclaration>();
+        
+        for (ImportDeclaration declaration : getImports(typeName))
+        {
+            if (declaration.isStatic())
+            {
+                continue;
+            }
+            
+            String importName = declaration.getName().getFullyQualifiedName();
+            
+            if (declaration.isOnDemand())
+            {
+                onDemandImports.add(declaration);
+            }
+            else if (importName.equals(firstSegment) || importName.endsWith("." + firstSegment))
+            {
+                candidates.add(importName + rest);
+            }
+        }
+        
+        IPackageFragment packageFragment = contextType.getPackageFragment();
+        
+        candidates.add(packageFragment.isDefaultPackage()
+                     ? name
+                     : packageFragment.getElementName() + "." + name);
+        
+        for (ImportDeclaration declaration : onDemandImports)
+        {
+            candidates.add(declaration.getName().getFullyQualifiedName() + "." + name);
+        }
+        
+        candidates.add("java.lang." + name);
+        
+        for (String candidate : candidates)
+        {
+            IType type = findType(javaProject, candidate);
+            
+            if (type != null)
+            {
+                return type;
+            }
+        }
+        
+        return null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<ImportDeclaration> getImports(ASTNode node)
+    {
+        ASTNode root = node.getRoot();
+        
+        return root instanceof CompilationUnit
+             ? ((CompilationUnit) root).imports()
+             : Collections.<ImportDeclaration>emptyList();
+    }
+    
+    private IType findType(IJavaProject javaProject, String className)
+    {
+        String key = javaProject.getElementName() + "/" + className;
+        
+        if (types.containsKey(key))
+        {
+            return types.get(key);
+        }
+        
+        IType type = null;
+        
+        try
+        {
+            type = javaProject.findType(className);
+            
+            if (type != null && !type.exists())
+            {
+                type = null;
+            }
+        }
+        catch (JavaModelException e)
+        {
+            //  Ignore
+        }
+        
+        types.put(key, type);
+        
+        return type;
+    }
+    
+    private String getConstant(IType type, String fieldName)
+    {
+        String key = type.getFullyQualifiedName('.') + "#" + fieldName;
+        
+        if (constants.containsKey(key))
+        {
+            return constants.get(key);
+        }
+        
+        String value = getConstant(type.getField(fieldName));
+        
+        constants.put(key, value);
+        
+        if (type.getCompilationUnit() != null)
+        {
+            lookedUpUnits.add(type.getCompilationUnit());
+        }
+        
+        return value;
+    }
+    
+    private IField searchField(Name name)
+    {
+        String key = name.getFullyQualifiedName();
+        
+        IField field;
+        
+        if (searchedFields.containsKey(key))
+        {
+            field = searchedFields.get(key);
+        }
+        else
+        {
+            field = EclipseUtils.findFieldDeclaration(project, name);
+            
+            searchedFields.put(key, field);
+            
+            if (field != null && field.getCompilationUnit() != null)
+            {
+                lookedUpUnits.add(field.getCompilationUnit());
+            }
+        }
+        
+        return field;
+    }
+    
+    private static String getConstant(IField field)
+    {
+        if (field == null || !field.exists())
+        {
+            return null;
+        }
+        
+        try
+        {
+            Object constant = field.getConstant();
+            
+            if (!(constant instanceof String))
+            {
+                return null;
+            }
+            
+            String value = (String) constant;
+            
+            //  Constants of source fields are returned as they're written in the source code
+            if (field.getCompilationUnit() != null
+                    && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            {
+                value = value.substring(1, value.length() - 1);
+            }
+            
+            return value;
+        }
+        catch (JavaModelException e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Forgets everything that was learned from types declared in the compilation unit before the next lookup.
+     * Doesn't wait for the running lookup.
+     *
+     * @return <code>true</code> if some constant was looked up in this compilation unit.
+     */
+    public boolean invalidate(ICompilationUnit unit)
+    {
+        changedUnits.add(unit);
+        
+        return lookedUpUnits.remove(unit);
+    }
+    
+    private void forgetChangedUnits()
+    {
+        ICompilationUnit unit;
+        
+        while ((unit = changedUnits.poll()) != null)
+        {
+            forget(unit);
+        }
+    }
+    
+    private void forget(ICompilationUnit unit)
+    {
+        IJavaElement parent = unit.getParent();
+        
+        String typeName = unit.getElementName();
+        
+        if (typeName.endsWith(".java"))
+        {
+            typeName = typeName.substring(0, typeName.length() - ".java".length());
+        }
+        
+        if (parent instanceof IPackageFragment && !((IPackageFragment) parent).isDefaultPackage())
+        {
+            typeName = parent.getElementName() + "." + typeName;
+        }
+        
+        for (Iterator<Map.Entry<String, String>> iterator = constants.entrySet().iterator(); iterator.hasNext();)
+        {
+            Map.Entry<String, String> entry = iterator.next();
+            
+            String key = entry.getKey();
+            
+            if (key.startsWith(typeName + "#") || key.startsWith(typeName + "."))
+            {
+                //  Misses too, the constant may have been added
+                iterator.remove();
+            }
+        }
+        
+        for (Iterator<IField> iterator = searchedFields.values().iterator(); iterator.hasNext();)
+        {
+            IField field = iterator.next();
+            
+            if (field != null && unit.equals(field.getCompilationUnit()))
+            {
+                iterator.remove();
+            }
+        }
+        
+        Set<String> typeKeys = new HashSet<String>();
+        
+        for (Map.Entry<String, IType> entry : types.entrySet())
+        {
+            if (entry.getValue() != null && unit.equals(entry.getValue().getCompilationUnit()))
+            {
+                typeKeys.add(entry.getKey());
+            }
+        }
+        
+        types.keySet().removeAll(typeKeys);
+    }
+    
+    /**
+     * Forgets all misses, so that constants of the types added since the last lookup can be found.
+     */
+    public synchronized void forgetMisses()
+    {
+        forgetChangedUnits();
+        
+        constants.values().removeAll(Collections.singleton(null));
+        types.values().removeAll(Collections.singleton(null));
+        searchedFields.values().removeAll(Collections.singleton(null));
+    }
+}
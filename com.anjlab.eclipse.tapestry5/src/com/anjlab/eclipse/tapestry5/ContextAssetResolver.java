@@ -1,5 +1,7 @@
 package com.anjlab.eclipse.tapestry5;
 
+import java.util.List;
+
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -9,14 +11,29 @@ public class ContextAssetResolver implements AssetResolver
     @Override
     public TapestryFile resolve(String path, TapestryFile relativeTo) throws AssetException
     {
-        IContainer webapp = TapestryUtils.findWebapp(relativeTo.getProject());
+        ProjectTopology topology = ProjectTopology.get(relativeTo.getProject());
+        
+        List<IContainer> webapps = topology.getWebapps();
+        
+        if (webapps.isEmpty())
+        {
+            throw new AssetException("Couldn't find context folder " + topology.getWebappPaths());
+        }
+        
+        IResource resource = null;
         
-        if (webapp == null)
+        //  Context roots are merged, the first one that has the file wins
+        for (IContainer webapp : webapps)
         {
-            throw new AssetException("Couldn't find context folder ('src/main/webapp')");
+            resource = webapp.findMember(path);
+            
+            if (resource != null)
+            {
+                break;
+            }
         }
         
-        IResource resource = webapp.findMember(path);
+        IContainer webapp = webapps.get(0);
         
         if (resource == null)
         {
@@ -27,7 +44,7 @@ public class ContextAssetResolver implements AssetResolver
         if (!(resource instanceof IFile))
         {
             throw new AssetException(
-                    "'" + webapp.getProjectRelativePath().toPortableString() + "/" + path + "' is not a file");
+                    "'" + resource.getProjectRelativePath().toPortableString() + "' is not a file");
         }
         
         IFile file = (IFile) resource;
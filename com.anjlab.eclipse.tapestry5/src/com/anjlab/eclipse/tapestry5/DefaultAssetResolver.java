@@ -10,21 +10,7 @@ public class DefaultAssetResolver implements AssetResolver
         try
         {
             List<TapestryFile> files = relativeTo.getContext().findTapestryFiles(
-                    relativeTo, true, new TapestryContext.FileNameBuilder()
-            {
-                @Override
-                public String getFileName(String fileName, String fileExtension)
-                {
-                    int lastIndexOfDash = fileName.lastIndexOf('/');
-                    
-                    if (lastIndexOfDash <= 0)
-                    {
-                        return path;
-                    }
-                    
-                    return fileName.substring(0, lastIndexOfDash) + '/' + path;
-                }
-            });
+                    relativeTo, true, FileNameQuery.forPath(path));
             
             if (!files.isEmpty())
             {
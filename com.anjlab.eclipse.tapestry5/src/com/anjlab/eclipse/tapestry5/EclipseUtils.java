@@ -1,7 +1,11 @@
 package com.anjlab.eclipse.tapestry5;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -9,6 +13,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IField;
@@ -36,6 +41,8 @@ import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.ide.IDE;
+import org.eclipse.ui.part.MultiPageEditorPart;
+import org.eclipse.ui.texteditor.ITextEditor;
 
 @SuppressWarnings("restriction")
 public class EclipseUtils
@@ -139,6 +146,34 @@ public class EclipseUtils
         });
     }
 
+    /**
+     * Opens the file and selects the given range of text.
+     */
+    public static void openFile(final IWorkbenchWindow window, final IFile file, final int offset, final int length)
+    {
+        openFile(window, file, new EditorCallback()
+        {
+            @Override
+            public void editorOpened(IEditorPart editorPart)
+            {
+                if (editorPart instanceof MultiPageEditorPart)
+                {
+                    Object selectedPage = ((MultiPageEditorPart) editorPart).getSelectedPage();
+                    
+                    if (selectedPage instanceof IEditorPart)
+                    {
+                        editorPart = (IEditorPart) selectedPage;
+                    }
+                }
+                
+                if (editorPart instanceof ITextEditor)
+                {
+                    ((ITextEditor) editorPart).selectAndReveal(offset, length);
+                }
+            }
+        });
+    }
+    
     public static void openError(final IWorkbenchWindow window, String message)
     {
         MessageDialog.openError(
@@ -196,50 +231,16 @@ public class EclipseUtils
             && (((IPackageFragmentRoot) javaElement).getKind() == IPackageFragmentRoot.K_SOURCE);
     }
 
-    public static IFile findFileCaseInsensitive(IContainer container, String componentPath)
+    public static File getArchiveFile(IPackageFragmentRoot root)
     {
-        String[] parts = (componentPath.startsWith("/") ? componentPath.substring(1) : componentPath).split("/");
-        for (int i = 0; i < parts.length; i++)
-        {
-            String part = parts[i];
-            try
-            {
-                boolean found = false;
-                
-                for (IResource member : container.members())
-                {
-                    if (part.equalsIgnoreCase(member.getName()))
-                    {
-                        if (member instanceof IFile && i == parts.length - 1)
-                        {
-                            return (IFile) member;
-                        }
-                        
-                        if (!(member instanceof IContainer))
-                        {
-                            return null;
-                        }
-                        
-                        container = (IContainer) member;
-                        
-                        found = true;
-                        
-                        break;
-                    }
-                }
-                
-                if (!found)
-                {
-                    return null;
-                }
-            }
-            catch (CoreException e)
-            {
-            }
-        }
-        return null;
+        //  Workspace archives have resource, external archives are addressed by the file system path
+        IResource resource = root.getResource();
+        
+        IPath location = resource != null ? resource.getLocation() : root.getPath();
+        
+        return location != null ? location.toFile() : null;
     }
-
+    
     public static IField findFieldDeclaration(IProject project, Name name)
     {
         SearchPattern pattern = SearchPattern.createPattern(name.getFullyQualifiedName(),
@@ -274,6 +275,54 @@ public class EclipseUtils
         return exactMatchOrNull(matches, IType.class);
     }
 
+    /**
+     * Finds declarations of all given types with a single search over the project scope.
+     * 
+     * @return Map from fully qualified class name to its type,
+     *         names of types that weren't found are not in the map.
+     */
+    public static Map<String, IType> findTypeDeclarations(IProject project, Collection<String> classNames)
+    {
+        Map<String, IType> types = new HashMap<String, IType>();
+        
+        SearchPattern pattern = null;
+        
+        for (String className : classNames)
+        {
+            SearchPattern classPattern = SearchPattern.createPattern(className,
+                    IJavaSearchConstants.TYPE, IJavaSearchConstants.DECLARATIONS, SearchPattern.R_FULL_MATCH);
+            
+            if (classPattern == null)
+            {
+                continue;
+            }
+            
+            pattern = pattern == null ? classPattern : SearchPattern.createOrPattern(pattern, classPattern);
+        }
+        
+        if (pattern == null)
+        {
+            return types;
+        }
+        
+        for (SearchMatch match : searchJava(project, pattern))
+        {
+            if (match.isExact() && match.getElement() instanceof IType)
+            {
+                IType type = (IType) match.getElement();
+                
+                String className = type.getFullyQualifiedName('.');
+                
+                if (classNames.contains(className) && !types.containsKey(className))
+                {
+                    types.put(className, type);
+                }
+            }
+        }
+        
+        return types;
+    }
+    
     private static List<SearchMatch> searchJava(IProject project,
             SearchPattern pattern)
     {
@@ -326,10 +375,13 @@ public class EclipseUtils
         {
             throw new IllegalStateException(SOURCE_NOT_FOUND);
         }
+        //  Parser has no project to resolve bindings against, and callers only need syntax,
+        //  so skip bindings, but recover statements to get as much as possible out of broken code
         ASTParser parser = ASTParser.newParser(AST.JLS4);
         parser.setKind(ASTParser.K_COMPILATION_UNIT);
         parser.setSource(source.toCharArray());
-        parser.setResolveBindings(true);
+        parser.setResolveBindings(false);
+        parser.setStatementsRecovery(true);
         return (CompilationUnit) parser.createAST(null);
     }
 
@@ -0,0 +1,257 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Describes files related to some {@link TapestryFile}: folder relative to the folder of that file,
+ * base names and extensions, and whether localized variants like <code>Index_de.properties</code> match too.
+ * <p>
+ * Queries are matched against file names directly, so they can be run on folder listings and indexes
+ * without building and compiling patterns.
+ */
+public class FileNameQuery
+{
+    private static final Set<String> LANGUAGES = new HashSet<String>(Arrays.asList(Locale.getISOLanguages()));
+    
+    private static final Pattern COUNTRY_PATTERN = Pattern.compile("[A-Z]{2}|[0-9]{3}");
+    
+    private final String folder;
+    private final List<String> baseNames;
+    private final List<String> extensions;
+    private boolean localized;
+    
+    /**
+     * @param folder Folder relative to the folder of the file, empty string for the same folder.
+     * @param baseName Name of the file without extension.
+     * @param extensions Extensions without the leading dot, empty string for files without extension.
+     */
+    public FileNameQuery(String folder, String baseName, String... extensions)
+    {
+        this.folder = folder;
+        this.baseNames = new ArrayList<String>(Collections.singletonList(baseName));
+        this.extensions = Arrays.asList(extensions);
+    }
+    
+    /**
+     * @return Query for the file with the given path relative to the folder of the file, i.e. <code>../css/main.css</code>.
+     */
+    public static FileNameQuery forPath(String path)
+    {
+        int slashIndex = path.lastIndexOf('/');
+        
+        String folder = slashIndex < 0 ? "" : path.substring(0, slashIndex);
+        String fileName = path.substring(slashIndex + 1);
+        
+        int dotIndex = fileName.lastIndexOf('.');
+        
+        return dotIndex < 0
+             ? new FileNameQuery(folder, fileName, "")
+             : new FileNameQuery(folder, fileName.substring(0, dotIndex), fileName.substring(dotIndex + 1));
+    }
+    
+    /**
+     * @return Query for files in the same folder as the given file, with the same base name and the given extensions.
+     */
+    public static FileNameQuery forSibling(TapestryFile file, String... extensions)
+    {
+        return new FileNameQuery("", getBaseName(file.getName()), extensions);
+    }
+    
+    /**
+     * @return Name of the file without extension.
+     */
+    public static String getBaseName(String fileName)
+    {
+        int dotIndex = fileName.lastIndexOf('.');
+        
+        return dotIndex < 0 ? fileName : fileName.substring(0, dotIndex);
+    }
+    
+    /**
+     * @return Name of the file without extension and locale suffix, i.e. <code>Index</code> for <code>Index_de.properties</code>.
+     */
+    public static String getUnlocalizedBaseName(String fileName)
+    {
+        String baseName = getBaseName(fileName);
+        
+        if (!fileName.endsWith(".properties"))
+        {
+            //  Names of classes and templates may contain underscores too, only properties files are localized
+            return baseName;
+        }
+        
+        int localeIndex = getLocaleIndex(baseName);
+        
+        return localeIndex > 0 ? baseName.substring(0, localeIndex) : baseName;
+    }
+    
+    /**
+     * @return Index of the underscore the locale suffix of the name starts with, i.e. 10 for <code>User_Index_de_DE</code>,
+     *         or <code>-1</code> if the name has no locale suffix.
+     */
+    public static int getLocaleIndex(String baseName)
+    {
+        for (int index = baseName.indexOf('_'); index > 0; index = baseName.indexOf('_', index + 1))
+        {
+            if (isLocale(baseName.substring(index + 1)))
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return <code>true</code> if the suffix is <code>language[_COUNTRY[_variant]]</code>
+     *         with ISO 639 language and ISO 3166 or UN M.49 country, like in the names of resource bundles.
+     */
+    private static boolean isLocale(String suffix)
+    {
+        String[] parts = suffix.split("_", 3);
+        
+        if (!LANGUAGES.contains(parts[0]))
+        {
+            return false;
+        }
+        
+        if (parts.length == 1)
+        {
+            return true;
+        }
+        
+        String country = parts[1];
+        
+        if (!COUNTRY_PATTERN.matcher(country).matches() && !(country.length() == 0 && parts.length == 3))
+        {
+            return false;
+        }
+        
+        return parts.length == 2 || parts[2].length() > 0;
+    }
+    
+    /**
+     * Makes localized variants of the files match too, i.e. <code>Index_de.properties</code> for <code>Index.properties</code>.
+     */
+    public FileNameQuery localized()
+    {
+        this.localized = true;
+        return this;
+    }
+    
+    /**
+     * Adds camel case variant of the lower-case-with-dashes base names, i.e. <code>UserEdit</code> for <code>user-edit</code>.
+     * Variants are looked up after the original names.
+     */
+    public FileNameQuery withCamelCaseVariant()
+    {
+        for (String baseName : new ArrayList<String>(baseNames))
+        {
+            String variant = toCamelCase(baseName);
+            
+            if (!baseNames.contains(variant))
+            {
+                baseNames.add(variant);
+            }
+        }
+        return this;
+    }
+    
+    private static String toCamelCase(String baseName)
+    {
+        StringBuilder builder = new StringBuilder();
+        
+        for (String part : baseName.split("-"))
+        {
+            if (part.length() > 0)
+            {
+                builder.append(Character.toUpperCase(part.charAt(0)))
+                       .append(part.substring(1));
+            }
+        }
+        
+        return builder.toString();
+    }
+    
+    /**
+     * @return Folder relative to the folder of the file, empty string for the same folder.
+     */
+    public String getFolder()
+    {
+        return folder;
+    }
+    
+    public boolean isLocalized()
+    {
+        return localized;
+    }
+    
+    public boolean hasExtension(String extension)
+    {
+        return extensions.contains(extension);
+    }
+    
+    /**
+     * @return Exact names of the files without localized variants, best candidates first.
+     */
+    public List<String> getFileNames()
+    {
+        List<String> fileNames = new ArrayList<String>(baseNames.size() * extensions.size());
+        
+        for (String baseName : baseNames)
+        {
+            for (String extension : extensions)
+            {
+                fileNames.add(extension.length() == 0 ? baseName : baseName + "." + extension);
+            }
+        }
+        
+        return fileNames;
+    }
+    
+    /**
+     * @return <code>true</code> if the file name (without folder) matches this query.
+     */
+    public boolean matches(String fileName)
+    {
+        for (String baseName : baseNames)
+        {
+            if (!fileName.startsWith(baseName))
+            {
+                continue;
+            }
+            
+            for (String extension : extensions)
+            {
+                String suffix = extension.length() == 0 ? "" : "." + extension;
+                
+                if (!fileName.endsWith(suffix))
+                {
+                    continue;
+                }
+                
+                int localeLength = fileName.length() - baseName.length() - suffix.length();
+                
+                if (localeLength == 0
+                        || (localized && localeLength > 1 && fileName.charAt(baseName.length()) == '_'
+                                && isLocale(fileName.substring(baseName.length() + 1, fileName.length() - suffix.length()))))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return (folder.length() == 0 ? "" : folder + "/") + getFileNames() + (localized ? " (localized)" : "");
+    }
+}
@@ -6,6 +6,12 @@ public interface ITapestryContextListener
 {
     void projectChanged(IWorkbenchWindow window, TapestryProject newTapestryProject);
     
+    /**
+     * Usages of components or message catalogs of the current project have changed,
+     * while its module graph stays the same.
+     */
+    void indexesChanged(IWorkbenchWindow window, TapestryProject tapestryProject);
+    
     void contextChanged(IWorkbenchWindow window, TapestryContext newContext);
     
     void selectionChanged(IWorkbenchWindow window, TapestryFile tapestryFile);
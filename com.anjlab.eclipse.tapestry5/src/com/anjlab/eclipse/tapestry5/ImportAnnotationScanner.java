@@ -0,0 +1,156 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.IAnnotation;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IMemberValuePair;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.util.ClassFormatException;
+import org.eclipse.jdt.core.util.IAnnotationComponent;
+import org.eclipse.jdt.core.util.IAnnotationComponentValue;
+import org.eclipse.jdt.core.util.IClassFileAttribute;
+import org.eclipse.jdt.core.util.IClassFileReader;
+import org.eclipse.jdt.core.util.IRuntimeVisibleAnnotationsAttribute;
+
+/**
+ * Finds assets imported with <code>@Import</code> annotations of the types of a compilation unit,
+ * or of a class file.
+ * <p>
+ * <code>@Import</code> is retained at runtime, so for class files the annotation is read from
+ * the <code>RuntimeVisibleAnnotations</code> attribute of the class bytes. Only constant pool and class attributes
+ * are decoded, there's no need to open a working copy and map it to the attached source.
+ */
+public class ImportAnnotationScanner
+{
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    
+    private static final String IMPORT_DESCRIPTOR = "Lorg/apache/tapestry5/annotations/Import;";
+    
+    public List<ImportedAsset> findImports(ICompilationUnit compilationUnit) throws JavaModelException
+    {
+        List<ImportedAsset> imports = new ArrayList<ImportedAsset>();
+        
+        for (IType type : compilationUnit.getAllTypes())
+        {
+            for (IAnnotation annotation : type.getAnnotations())
+            {
+                if (TapestryUtils.isTapestryImportAnnotation(annotation))
+                {
+                    IMemberValuePair[] pairs = annotation.getMemberValuePairs();
+                    for (IMemberValuePair pair : pairs)
+                    {
+                        if (isImportType(pair.getMemberName()))
+                        {
+                            processImport(imports, annotation, pair.getMemberName(), pair.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        
+        return imports;
+    }
+    
+    private static boolean isImportType(String name)
+    {
+        return ImportedAsset.LIBRARY.equals(name) || ImportedAsset.STYLESHEET.equals(name);
+    }
+    
+    private void processImport(List<ImportedAsset> imports, IAnnotation annotation, String type, Object value)
+    {
+        if (value instanceof Object[])
+        {
+            for (Object item : (Object[])value)
+            {
+                processImportedFile(imports, annotation, type, (String) item);
+            }
+        }
+        else if (value instanceof String)
+        {
+            processImportedFile(imports, annotation, type, (String) value);
+        }
+    }
+    
+    private void processImportedFile(List<ImportedAsset> imports, IAnnotation annotation, String type, String fileName)
+    {
+        ISourceRange sourceRange = null;
+        try
+        {
+            sourceRange = annotation.getSourceRange();
+        }
+        catch (JavaModelException e)
+        {
+            Activator.getDefault().logError("Error getting annotation location", e);
+        }
+        imports.add(new ImportedAsset(type, fileName, sourceRange));
+    }
+    
+    public List<ImportedAsset> findImports(IClassFile classFile) throws ClassFormatException
+    {
+        List<ImportedAsset> imports = new ArrayList<ImportedAsset>();
+        
+        IClassFileReader reader = ToolFactory.createDefaultClassFileReader(classFile,
+                IClassFileReader.CONSTANT_POOL | IClassFileReader.CLASSFILE_ATTRIBUTES);
+        
+        if (reader == null)
+        {
+            throw new ClassFormatException("Class file is not available or broken: " + classFile.getElementName());
+        }
+        
+        for (IClassFileAttribute attribute : reader.getAttributes())
+        {
+            if (!(attribute instanceof IRuntimeVisibleAnnotationsAttribute)
+                    || !RUNTIME_VISIBLE_ANNOTATIONS.equals(new String(attribute.getAttributeName())))
+            {
+                continue;
+            }
+            
+            for (org.eclipse.jdt.core.util.IAnnotation annotation
+                    : ((IRuntimeVisibleAnnotationsAttribute) attribute).getAnnotations())
+            {
+                if (!IMPORT_DESCRIPTOR.equals(new String(annotation.getTypeName())))
+                {
+                    continue;
+                }
+                
+                for (IAnnotationComponent component : annotation.getComponents())
+                {
+                    String type = new String(component.getComponentName());
+                    
+                    if (isImportType(type))
+                    {
+                        processImport(imports, type, component.getComponentValue());
+                    }
+                }
+            }
+        }
+        
+        return imports;
+    }
+    
+    private void processImport(List<ImportedAsset> imports, String type, IAnnotationComponentValue value)
+    {
+        switch (value.getTag())
+        {
+        case IAnnotationComponentValue.ARRAY_TAG:
+            
+            for (IAnnotationComponentValue item : value.getAnnotationComponentValues())
+            {
+                processImport(imports, type, item);
+            }
+            break;
+        
+        case IAnnotationComponentValue.STRING_TAG:
+            
+            //  Values of annotation elements refer to CONSTANT_Utf8 entries directly
+            imports.add(new ImportedAsset(type, new String(value.getConstantValue().getUtf8Value()), null));
+            break;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Bounded LRU cache of {@link ImportedAsset}s of compilation units and class files.
+ * <p>
+ * Entries are kept with the modification stamp of the Java file, or with the fingerprint of the archive
+ * for class files from jars, and are only returned while the stamp matches.
+ * Java element deltas drop the entries of changed compilation units and archives early,
+ * so that the cache doesn't hold stale entries until they are pushed out.
+ */
+public class ImportCache
+{
+    private static final int MAX_SIZE = 1024;
+    
+    private static class CacheEntry
+    {
+        private final String stamp;
+        private final List<ImportedAsset> imports;
+        
+        public CacheEntry(String stamp, List<ImportedAsset> imports)
+        {
+            this.stamp = stamp;
+            this.imports = Collections.unmodifiableList(imports);
+        }
+    }
+    
+    private final Map<IJavaElement, CacheEntry> entries = new LinkedHashMap<IJavaElement, CacheEntry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IJavaElement, CacheEntry> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+    
+    /**
+     * @return Cached imports of the compilation unit or class file,
+     *         or <code>null</code> if they were never cached or the file changed since then.
+     */
+    public List<ImportedAsset> get(IJavaElement element)
+    {
+        String stamp = getStamp(element);
+        
+        if (stamp == null)
+        {
+            return null;
+        }
+        
+        synchronized (this)
+        {
+            CacheEntry entry = entries.get(getKey(element));
+            
+            return entry != null && entry.stamp.equals(stamp) ? entry.imports : null;
+        }
+    }
+    
+    public void put(IJavaElement element, List<ImportedAsset> imports)
+    {
+        String stamp = getStamp(element);
+        
+        if (stamp == null)
+        {
+            return;
+        }
+        
+        synchronized (this)
+        {
+            entries.put(getKey(element), new CacheEntry(stamp, imports));
+        }
+    }
+    
+    private static IJavaElement getKey(IJavaElement element)
+    {
+        //  Working copies share the entry of their primary compilation unit
+        return element instanceof ICompilationUnit
+             ? ((ICompilationUnit) element).getPrimary()
+             : element;
+    }
+    
+    /**
+     * @return Modification stamp of the Java file or fingerprint of the archive of the class file,
+     *         or <code>null</code> if imports of the element can't be cached.
+     */
+    private static String getStamp(IJavaElement element)
+    {
+        if (element instanceof ICompilationUnit)
+        {
+            ICompilationUnit compilationUnit = (ICompilationUnit) element;
+            
+            try
+            {
+                if (compilationUnit.isWorkingCopy() && compilationUnit.hasUnsavedChanges())
+                {
+                    //  Content of the editor differs from the file
+                    return null;
+                }
+            }
+            catch (JavaModelException e)
+            {
+                return null;
+            }
+        }
+        else if (element instanceof IClassFile)
+        {
+            String fingerprint = TapestryModuleIndex.getFingerprint(
+                    (IPackageFragmentRoot) element.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT));
+            
+            if (fingerprint != null)
+            {
+                return fingerprint;
+            }
+        }
+        else
+        {
+            return null;
+        }
+        
+        //  Compilation units and class files from binary folders
+        IResource resource = element.getResource();
+        
+        return resource != null && resource.exists()
+             ? String.valueOf(resource.getModificationStamp())
+             : null;
+    }
+    
+    /**
+     * Drops entries of the compilation units, archives and projects affected by the Java element delta.
+     */
+    public void elementChanged(IJavaElementDelta delta)
+    {
+        IJavaElement element = delta.getElement();
+        
+        switch (element.getElementType())
+        {
+        case IJavaElement.JAVA_MODEL:
+        case IJavaElement.PACKAGE_FRAGMENT:
+            
+            break;
+        
+        case IJavaElement.JAVA_PROJECT:
+            
+            if (delta.getKind() == IJavaElementDelta.REMOVED
+                    || (delta.getFlags() & (IJavaElementDelta.F_CLOSED | IJavaElementDelta.F_CLASSPATH_CHANGED)) != 0)
+            {
+                removeAll(element);
+                return;
+            }
+            break;
+        
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            
+            if (delta.getKind() == IJavaElementDelta.REMOVED
+                    || (delta.getFlags() & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+                                          | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0)
+            {
+                removeAll(element);
+                return;
+            }
+            break;
+        
+        case IJavaElement.COMPILATION_UNIT:
+        case IJavaElement.CLASS_FILE:
+            
+            if (delta.getKind() != IJavaElementDelta.CHANGED
+                    || (delta.getFlags() & (IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE)) != 0)
+            {
+                remove(element);
+            }
+            return;
+        
+        default:
+            
+            //  Members of compilation units are covered by the compilation unit itself
+            return;
+        }
+        
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+        {
+            elementChanged(child);
+        }
+    }
+    
+    private synchronized void remove(IJavaElement element)
+    {
+        entries.remove(getKey(element));
+    }
+    
+    private synchronized void removeAll(IJavaElement parent)
+    {
+        for (Iterator<IJavaElement> iterator = entries.keySet().iterator(); iterator.hasNext();)
+        {
+            IJavaElement element = iterator.next();
+            
+            if (parent.equals(element.getAncestor(parent.getElementType())))
+            {
+                iterator.remove();
+            }
+        }
+    }
+    
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+}
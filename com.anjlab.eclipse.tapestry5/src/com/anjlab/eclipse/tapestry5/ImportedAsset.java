@@ -0,0 +1,50 @@
+package com.anjlab.eclipse.tapestry5;
+
+import org.eclipse.jdt.core.ISourceRange;
+
+/**
+ * JavaScript library or stylesheet imported with the <code>@Import</code> annotation of a page, component or mixin class.
+ */
+public class ImportedAsset
+{
+    public static final String LIBRARY = "library";
+    public static final String STYLESHEET = "stylesheet";
+    
+    private final String type;
+    private final String path;
+    private final ISourceRange sourceRange;
+    
+    public ImportedAsset(String type, String path, ISourceRange sourceRange)
+    {
+        this.type = type;
+        this.path = path;
+        this.sourceRange = sourceRange;
+    }
+    
+    /**
+     * @return {@link #LIBRARY} or {@link #STYLESHEET}.
+     */
+    public String getType()
+    {
+        return type;
+    }
+    
+    public String getPath()
+    {
+        return path;
+    }
+    
+    /**
+     * @return Location of the annotation in the source code, or <code>null</code> if there's no source code.
+     */
+    public ISourceRange getSourceRange()
+    {
+        return sourceRange;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return type + ":" + path;
+    }
+}
@@ -4,16 +4,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJarEntryResource;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.WorkingCopyOwner;
+import org.eclipse.jdt.core.util.ClassFormatException;
 
 public class JarTapestryContext extends TapestryContext
 {
@@ -27,6 +30,41 @@ public class JarTapestryContext extends TapestryContext
         initFromFile(new ClassFile(this, classFile));
     }
 
+    @Override
+    protected List<ImportedAsset> findImports()
+    {
+        TapestryFile javaFile = getJavaFile();
+        
+        if (!(javaFile instanceof ClassFile))
+        {
+            return super.findImports();
+        }
+        
+        IClassFile classFile = ((ClassFile) javaFile).getClassFile();
+        
+        ImportCache importCache = Activator.getDefault().getImportCache();
+        
+        List<ImportedAsset> imports = importCache.get(classFile);
+        
+        if (imports == null)
+        {
+            try
+            {
+                imports = new ImportAnnotationScanner().findImports(classFile);
+            }
+            catch (ClassFormatException e)
+            {
+                Activator.getDefault().logWarning("Error reading annotations from bytecode, opening class file instead", e);
+                
+                imports = super.findImports();
+            }
+            
+            importCache.put(classFile, imports);
+        }
+        
+        return imports;
+    }
+    
     @Override
     protected ICompilationUnit getCompilationUnit()
     {
@@ -70,7 +108,7 @@ public class JarTapestryContext extends TapestryContext
     }
 
     @Override
-    public List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameBuilder fileNameBuilder)
+    public List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameQuery query)
     {
         List<TapestryFile> files = new ArrayList<TapestryFile>();
         
@@ -100,23 +138,29 @@ public class JarTapestryContext extends TapestryContext
             }
         }
         
+        if (pkg != null && query.getFolder().length() > 0)
+        {
+            pkg = findRelativePackage(pkg, query.getFolder());
+        }
+        
         if (pkg != null)
         {
             try
             {
-                String fileName = fileNameBuilder.getFileName(forFile.getName(), forFile.getFileExtension());
-                
-                if (fileName.endsWith(".class"))
+                if (query.hasExtension("class"))
                 {
-                    IClassFile classFile = pkg.getClassFile(fileName);
-                    
-                    if (classFile != null)
+                    for (String fileName : query.getFileNames())
                     {
-                        files.add(new ClassFile(this, classFile));
+                        IClassFile classFile = pkg.getClassFile(fileName);
                         
-                        if (findFirst)
+                        if (classFile.exists())
                         {
-                            return files;
+                            files.add(new ClassFile(this, classFile));
+                            
+                            if (findFirst)
+                            {
+                                return files;
+                            }
                         }
                     }
                 }
@@ -129,16 +173,7 @@ public class JarTapestryContext extends TapestryContext
                         {
                             IJarEntryResource jarEntry = (IJarEntryResource) resource;
                             
-                            boolean matches = false;
-                            
-                            if (fileName.contains("*"))
-                            {
-                                matches = Pattern.matches(fileName, jarEntry.getName());
-                            }
-                            
-                            matches = matches || fileName.equals(jarEntry.getName());
-                            
-                            if (matches)
+                            if (jarEntry.isFile() && query.matches(jarEntry.getName()))
                             {
                                 files.add(new JarEntryFile(this, jarEntry));
                                 
@@ -159,6 +194,23 @@ public class JarTapestryContext extends TapestryContext
         return files;
     }
 
+    /**
+     * @return Package at the given path relative to the package, or <code>null</code> if it's outside of the root.
+     */
+    private static IPackageFragment findRelativePackage(IPackageFragment pkg, String relativeFolder)
+    {
+        IPath path = new Path(pkg.getElementName().replace('.', '/')).append(relativeFolder);
+        
+        if (path.segmentCount() > 0 && "..".equals(path.segment(0)))
+        {
+            return null;
+        }
+        
+        IPackageFragmentRoot root = (IPackageFragmentRoot) pkg.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        
+        return root.getPackageFragment(path.toString().replace('/', '.'));
+    }
+    
     protected Map<String, String> codeDesignExtensionMappings()
     {
         Map<String, String> result = new HashMap<String, String>();
@@ -3,7 +3,7 @@ package com.anjlab.eclipse.tapestry5;
 import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.IParent;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 
@@ -34,40 +34,52 @@ public class JarTapestryModule extends TapestryModule
     @Override
     public TapestryFile findJavaFileCaseInsensitive(String path)
     {
-        int index = path.lastIndexOf('/');
+        IPackageFragmentRoot root = (IPackageFragmentRoot) getModuleClass().getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        
+        if (root == null)
+        {
+            return null;
+        }
         
-        String[] segments = index < 0
-                          ? new String[] { path }
-                          : new String[] { path.substring(0, index).replace("/", "."), path.substring(index + 1) };
+        //  Class folders and outputs of binary projects are not indexed
+        ArchiveClassIndex index = Activator.getDefault().getArchiveClassIndexCache().getIndex(root);
         
-        IParent root = (IParent) getModuleClass().getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        IClassFile classFile = index != null
+                             ? index.findClassFile(root, path)
+                             : findClassFile(root, path);
+        
+        return classFile != null
+             ? TapestryUtils.createTapestryContext(classFile).getInitialFile()
+             : null;
+    }
+    
+    private static IClassFile findClassFile(IPackageFragmentRoot root, String path)
+    {
+        if (path.startsWith("/"))
+        {
+            path = path.substring(1);
+        }
+        
+        int index = path.lastIndexOf('/');
+        
+        String packageName = index < 0 ? "" : path.substring(0, index).replace("/", ".");
+        String fileName = path.substring(index + 1);
         
         try
         {
             for (IJavaElement child : root.getChildren())
             {
-                if (child.getElementName().equalsIgnoreCase(segments[0]))
+                if (child.getElementName().equalsIgnoreCase(packageName))
                 {
-                    if (segments.length == 0)
-                    {
-                        IClassFile classFile = (IClassFile) child;
-                        
-                        return TapestryUtils.createTapestryContext(classFile).getInitialFile();
-                    }
-                    else
+                    for (IClassFile classFile : ((IPackageFragment) child).getClassFiles())
                     {
-                        IPackageFragment pkg = (IPackageFragment) child;
-                        
-                        for (IClassFile classFile : pkg.getClassFiles())
+                        if (classFile.getElementName().equalsIgnoreCase(fileName))
                         {
-                            if (classFile.getElementName().equalsIgnoreCase(segments[1]))
-                            {
-                                return TapestryUtils.createTapestryContext(classFile).getInitialFile();
-                            }
+                            return classFile;
                         }
-                        
-                        break;
                     }
+                    
+                    break;
                 }
             }
         }
@@ -0,0 +1,415 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.util.ByteCodeVisitorAdapter;
+import org.eclipse.jdt.core.util.ClassFormatException;
+import org.eclipse.jdt.core.util.IClassFileReader;
+import org.eclipse.jdt.core.util.ICodeAttribute;
+import org.eclipse.jdt.core.util.IConstantPoolConstant;
+import org.eclipse.jdt.core.util.IConstantPoolEntry;
+import org.eclipse.jdt.core.util.IMethodInfo;
+
+/**
+ * Finds <code>new LibraryMapping(prefix, package)</code> constructions in the <code>contribute*</code>
+ * methods of a module class by looking at its bytecode, for jars that come without sources.
+ * <p>
+ * Only constant pool and method bodies are decoded. String constants are inlined by the compiler,
+ * so constructor arguments are taken from the <code>ldc</code> instructions that push them. Instructions
+ * between the <code>new</code> and the constructor call are followed on a simplified operand stack,
+ * so arguments computed by method calls, string concatenation or from local variables are reported
+ * as <code>&lt;?&gt;</code>, and references to static fields as <code>&lt;Owner.FIELD&gt;</code>,
+ * just like expressions that can't be evaluated in the source code.
+ */
+public class LibraryMappingBytecodeScanner
+{
+    private static final String LIBRARY_MAPPING_CLASS = "org/apache/tapestry5/services/LibraryMapping";
+    
+    private static final String LIBRARY_MAPPING_CONSTRUCTOR = "(Ljava/lang/String;Ljava/lang/String;)V";
+    
+    private static final String CONTRIBUTE_PREFIX = "contribute";
+    
+    private static final String UNKNOWN_VALUE = "<?>";
+    
+    public List<LibraryMapping> findLibraryMappings(IClassFile classFile) throws ClassFormatException
+    {
+        List<LibraryMapping> libraryMappings = new ArrayList<LibraryMapping>();
+        
+        IClassFileReader reader = ToolFactory.createDefaultClassFileReader(classFile,
+                IClassFileReader.CONSTANT_POOL | IClassFileReader.METHOD_INFOS | IClassFileReader.METHOD_BODIES);
+        
+        if (reader == null)
+        {
+            //  Class file is not available or broken
+            return libraryMappings;
+        }
+        
+        for (IMethodInfo method : reader.getMethodInfos())
+        {
+            ICodeAttribute code = method.getCodeAttribute();
+            
+            if (code != null && new String(method.getName()).startsWith(CONTRIBUTE_PREFIX))
+            {
+                code.traverse(new LibraryMappingVisitor(libraryMappings));
+            }
+        }
+        
+        return libraryMappings;
+    }
+    
+    private static class LibraryMappingVisitor extends ByteCodeVisitorAdapter
+    {
+        private final List<LibraryMapping> libraryMappings;
+        
+        //  Operand stack since the last 'new LibraryMapping', or null if there's no such instruction.
+        //  Only instructions that usually compute constructor arguments are modeled, one entry per value
+        private List<String> stack;
+        
+        //  Stack was popped below the 'new LibraryMapping', i.e. by an instruction that is not modeled
+        private boolean broken;
+        
+        public LibraryMappingVisitor(List<LibraryMapping> libraryMappings)
+        {
+            this.libraryMappings = libraryMappings;
+        }
+        
+        @Override
+        public void _new(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            if (stack == null && LIBRARY_MAPPING_CLASS.equals(new String(constantPoolEntry.getClassInfoName())))
+            {
+                stack = new ArrayList<String>();
+                broken = false;
+            }
+            
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _dup(int pc)
+        {
+            if (stack != null)
+            {
+                push(stack.isEmpty() ? UNKNOWN_VALUE : stack.get(stack.size() - 1));
+            }
+        }
+        
+        @Override
+        public void _pop(int pc)
+        {
+            pop(1);
+        }
+        
+        @Override
+        public void _ldc(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            pushConstant(constantPoolEntry);
+        }
+        
+        @Override
+        public void _ldc_w(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            pushConstant(constantPoolEntry);
+        }
+        
+        @Override
+        public void _ldc2_w(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        private void pushConstant(IConstantPoolEntry constantPoolEntry)
+        {
+            push(constantPoolEntry.getKind() == IConstantPoolConstant.CONSTANT_String
+                    ? constantPoolEntry.getStringValue()
+                    : UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _getstatic(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            String className = new String(constantPoolEntry.getClassName());
+            
+            push("<" + className.substring(className.lastIndexOf('/') + 1)
+                    + "." + new String(constantPoolEntry.getFieldName()) + ">");
+        }
+        
+        @Override
+        public void _getfield(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            pop(1);
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aconst_null(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aload(int pc, int index)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aload_0(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aload_1(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aload_2(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aload_3(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iload(int pc, int index)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iload_0(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iload_1(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iload_2(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iload_3(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_m1(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_0(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_1(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_2(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_3(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_4(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _iconst_5(int pc)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _bipush(int pc, byte value)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _sipush(int pc, short value)
+        {
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aaload(int pc)
+        {
+            pop(2);
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _arraylength(int pc)
+        {
+            pop(1);
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _anewarray(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            //  Arguments of varargs methods
+            pop(1);
+            push(UNKNOWN_VALUE);
+        }
+        
+        @Override
+        public void _aastore(int pc)
+        {
+            pop(3);
+        }
+        
+        @Override
+        public void _invokevirtual(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            invoke(constantPoolEntry, true);
+        }
+        
+        @Override
+        public void _invokeinterface(int pc, int index, byte nargs, IConstantPoolEntry constantPoolEntry)
+        {
+            invoke(constantPoolEntry, true);
+        }
+        
+        @Override
+        public void _invokestatic(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            invoke(constantPoolEntry, false);
+        }
+        
+        @Override
+        public void _invokespecial(int pc, int index, IConstantPoolEntry constantPoolEntry)
+        {
+            if (stack == null)
+            {
+                return;
+            }
+            
+            if (!LIBRARY_MAPPING_CLASS.equals(new String(constantPoolEntry.getClassName()))
+                    || !"<init>".equals(new String(constantPoolEntry.getMethodName())))
+            {
+                //  I.e. constructor of a StringBuilder used to compute an argument
+                invoke(constantPoolEntry, true);
+                return;
+            }
+            
+            if (LIBRARY_MAPPING_CONSTRUCTOR.equals(new String(constantPoolEntry.getMethodDescriptor())))
+            {
+                int size = stack.size();
+                
+                //  Expecting the new object, optionally its duplicate, and the two arguments,
+                //  anything else means some instruction in between wasn't modeled
+                boolean valid = !broken && (size == 3 || size == 4);
+                
+                String prefix = valid ? stack.get(size - 2) : UNKNOWN_VALUE;
+                String pkg = valid ? stack.get(size - 1) : UNKNOWN_VALUE;
+                
+                libraryMappings.add(new LibraryMapping(prefix, pkg));
+            }
+            
+            stack = null;
+        }
+        
+        private void invoke(IConstantPoolEntry constantPoolEntry, boolean hasReceiver)
+        {
+            if (stack == null)
+            {
+                return;
+            }
+            
+            String descriptor = new String(constantPoolEntry.getMethodDescriptor());
+            
+            pop(getArgumentCount(descriptor) + (hasReceiver ? 1 : 0));
+            
+            if (!descriptor.endsWith(")V"))
+            {
+                push(UNKNOWN_VALUE);
+            }
+        }
+        
+        private static int getArgumentCount(String descriptor)
+        {
+            int count = 0;
+            
+            int index = 1;
+            
+            while (index < descriptor.length() && descriptor.charAt(index) != ')')
+            {
+                while (descriptor.charAt(index) == '[')
+                {
+                    index++;
+                }
+                
+                if (descriptor.charAt(index) == 'L')
+                {
+                    index = descriptor.indexOf(';', index);
+                }
+                
+                index++;
+                count++;
+            }
+            
+            return count;
+        }
+        
+        private void push(String value)
+        {
+            if (stack != null)
+            {
+                stack.add(value);
+            }
+        }
+        
+        private void pop(int count)
+        {
+            if (stack == null)
+            {
+                return;
+            }
+            
+            if (count > stack.size())
+            {
+                broken = true;
+                count = stack.size();
+            }
+            
+            for (int i = 0; i < count; i++)
+            {
+                stack.remove(stack.size() - 1);
+            }
+        }
+    }
+}
@@ -5,7 +5,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -13,9 +12,10 @@ import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
 
 
@@ -85,9 +85,9 @@ public class LocalTapestryContext extends TapestryContext
     }
     
     @Override
-    public List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameBuilder fileNameBuilder)
+    public List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameQuery query)
     {
-        List<IFile> files = findTapestryFiles(((LocalFile) forFile).getFile(), findFirst, fileNameBuilder);
+        List<IFile> files = findTapestryFiles(((LocalFile) forFile).getFile(), findFirst, query);
         List<TapestryFile> tapestryFiles = new ArrayList<TapestryFile>();
         for (IFile file : files)
         {
@@ -105,117 +105,194 @@ public class LocalTapestryContext extends TapestryContext
         return result;
     }
 
-    private List<IFile> findTapestryFiles(IFile forFile, boolean findFirst, FileNameBuilder fileNameBuilder)
+    /**
+     * Folders where files related to some file are looked for.
+     */
+    private static class RelatedFolders
     {
-        try
+        //  Folder of the file first, then the same folder in all other source folders
+        private final List<IContainer> sourceFolders = new ArrayList<IContainer>();
+        
+        //  Same folder relative to the pages package in the web application context roots, templates only
+        private final List<IContainer> webappFolders = new ArrayList<IContainer>();
+    }
+    
+    private RelatedFolders findRelatedFolders(IFile forFile, String relativeFolder) throws CoreException
+    {
+        RelatedFolders folders = new RelatedFolders();
+        
+        IProject project = forFile.getProject();
+        
+        ProjectTopology topology = ProjectTopology.get(project);
+        
+        IPath pagesPath = new Path(TapestryUtils.getPagesPath(project)).makeRelative();
+        
+        //  Folder relative to the source folders
+        IPath folderPath;
+        
+        IContainer sourceFolder = null;
+        
+        IContainer webapp = TapestryUtils.isTemplateFile(forFile.getProjectRelativePath())
+                          ? topology.findRoot(forFile)
+                          : null;
+        
+        if (topology.isWebapp(webapp))
         {
-            String complementFileName = null;
-            
-            //  Check if the file is in the web application context
+            //  Page template from the web application context
+            folderPath = pagesPath
+                    .append(forFile.getParent().getFullPath().removeFirstSegments(webapp.getFullPath().segmentCount()))
+                    .append(relativeFolder);
+        }
+        else
+        {
+            //  Same folder first
+            addFolder(folders.sourceFolders, forFile.getParent(), new Path(relativeFolder));
             
-            boolean fromWebapp = false;
+            sourceFolder = topology.findSourceFolder(forFile);
             
-            IProject project = forFile.getProject();
+            if (sourceFolder == null)
+            {
+                Activator.getDefault().logWarning("Unable to find source folder for file: " + forFile.getProjectRelativePath());
+                
+                return folders;
+            }
             
-            IContainer webapp = TapestryUtils.findWebapp(project);
+            folderPath = forFile.getParent().getFullPath()
+                    .removeFirstSegments(sourceFolder.getFullPath().segmentCount())
+                    .append(relativeFolder);
+        }
+        
+        for (IContainer resourceContainer : topology.getSourceFolders())
+        {
+            if (resourceContainer.equals(sourceFolder))
+            {
+                continue;
+            }
             
-            if (TapestryUtils.isTemplateFile(forFile.getProjectRelativePath()))
+            addFolder(folders.sourceFolders, resourceContainer, folderPath);
+        }
+        
+        //  Look for TML files in web application context
+        //  https://github.com/anjlab/eclipse-tapestry5-plugin/issues/2
+        
+        if (pagesPath.isPrefixOf(folderPath))
+        {
+            for (IContainer contextRoot : topology.getWebapps())
             {
-                if (fromWebapp = TapestryUtils.isInFolder(forFile, webapp))
-                {
-                    String relativeFileName = TapestryUtils.getRelativeFileName(forFile, webapp);
-                    
-                    complementFileName = fileNameBuilder.getFileName(
-                            TapestryUtils.joinPath(TapestryUtils.getPagesPath(project), relativeFileName),
-                            forFile.getFileExtension());
-                }
+                addFolder(folders.webappFolders, contextRoot, folderPath.removeFirstSegments(pagesPath.segmentCount()));
             }
+        }
+        
+        return folders;
+    }
+    
+    private static void addFolder(List<IContainer> folders, IContainer container, IPath path)
+    {
+        IResource folder = path.isEmpty() ? container : container.findMember(path);
+        
+        if (folder instanceof IContainer)
+        {
+            folders.add((IContainer) folder);
+        }
+    }
+    
+    @Override
+    protected RelatedFiles findRelatedFiles(TapestryFile forFile)
+    {
+        IFile file = ((LocalFile) forFile).getFile();
+        
+        String complementExtension = codeDesignExtensionMappings().get(file.getFileExtension());
+        
+        if (complementExtension == null)
+        {
+            return super.findRelatedFiles(forFile);
+        }
+        
+        FileNameQuery complementQuery = FileNameQuery.forSibling(forFile, complementExtension);
+        
+        FileNameQuery propertiesQuery = new FileNameQuery(
+                "", FileNameQuery.getUnlocalizedBaseName(file.getName()), "properties").localized();
+        
+        IFile complementFile = null;
+        
+        List<TapestryFile> propertiesFiles = new ArrayList<TapestryFile>();
+        
+        try
+        {
+            RelatedFolders folders = findRelatedFolders(file, "");
             
-            List<IFile> resources = new ArrayList<IFile>();
+            //  Single pass over the folders for both queries
             
-            if (!fromWebapp)
+            for (IContainer folder : folders.sourceFolders)
             {
-                complementFileName = fileNameBuilder.getFileName(forFile.getName(), forFile.getFileExtension());
-                
-                //  Try searching in the same folder first
-                
-                resources = findMembers(forFile.getParent(), complementFileName);
-                
-                if (findFirst && !resources.isEmpty())
+                for (IResource member : folder.members())
                 {
-                    return resources;
+                    if (member.getType() != IResource.FILE)
+                    {
+                        continue;
+                    }
+                    
+                    if (complementFile == null && complementQuery.matches(member.getName()))
+                    {
+                        complementFile = (IFile) member;
+                    }
+                    else if (propertiesQuery.matches(member.getName()))
+                    {
+                        propertiesFiles.add(new LocalFile(this, (IFile) member));
+                    }
                 }
             }
             
-            //  Look in the source folders
-            
-            IJavaProject javaProject = JavaCore.create(forFile.getProject());
-            
-            IContainer container = null;
-            
-            if (!fromWebapp)
+            if (complementQuery.hasExtension("tml"))
             {
-                IContainer adaptedProject = (IContainer) javaProject.getCorrespondingResource().getAdapter(IContainer.class);
-                
-                IResource adaptedFile = adaptedProject.findMember(forFile.getProjectRelativePath());
-                
-                container = adaptedFile.getParent();
-                
-                while (container != null && !EclipseUtils.isSourceFolder(container))
-                {
-                    container = container.getParent();
-                }
-                
-                if (container == null)
+                for (IContainer folder : folders.webappFolders)
                 {
-                    Activator.getDefault().logWarning("Unable to find source folder for file: " + forFile.getProjectRelativePath());
+                    if (complementFile != null)
+                    {
+                        break;
+                    }
+                    
+                    List<IFile> templates = findMembers(folder, complementQuery, true);
                     
-                    return Collections.emptyList();
+                    complementFile = templates.isEmpty() ? null : templates.get(0);
                 }
-                
-                //  Get the file name relative to source folder
-                String relativeFileName = TapestryUtils.getRelativeFileName(forFile, container);
-                
-                complementFileName = fileNameBuilder.getFileName(relativeFileName, forFile.getFileExtension());
             }
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logError("Error finding related files", e);
+        }
+        
+        return new RelatedFiles(complementFile != null ? new LocalFile(this, complementFile) : null, propertiesFiles);
+    }
+    
+    private List<IFile> findTapestryFiles(IFile forFile, boolean findFirst, FileNameQuery query)
+    {
+        try
+        {
+            RelatedFolders folders = findRelatedFolders(forFile, query.getFolder());
+            
+            List<IFile> resources = new ArrayList<IFile>();
             
-            for (IPackageFragmentRoot root : javaProject.getAllPackageFragmentRoots())
+            for (IContainer folder : folders.sourceFolders)
             {
-                if (!EclipseUtils.isSourceFolder(root))
-                {
-                    continue;
-                }
-                
-                IContainer resourceContainer = (IContainer) root.getCorrespondingResource().getAdapter(IContainer.class);
+                resources.addAll(findMembers(folder, query, findFirst));
                 
-                if (container != null && resourceContainer.getFullPath().equals(container.getFullPath()))
-                {
-                    continue;
-                }
-                
-                List<IFile> resources2 = findMembers(resourceContainer, complementFileName);
-                
-                if (findFirst && !resources2.isEmpty())
+                if (findFirst && !resources.isEmpty())
                 {
-                    return resources2;
+                    return resources;
                 }
-                
-                resources.addAll(resources2);
             }
             
-            //  Look for TML files in web application context
-            //  https://github.com/anjlab/eclipse-tapestry5-plugin/issues/2
-            
-            if (complementFileName.endsWith(".tml"))
+            if (query.hasExtension("tml"))
             {
-                if (webapp != null)
+                for (IContainer folder : folders.webappFolders)
                 {
-                    IResource file = webapp.findMember(
-                            complementFileName.substring(TapestryUtils.getPagesPath(project).length()));
+                    resources.addAll(findMembers(folder, query, findFirst));
                     
-                    if (file instanceof IFile)
+                    if (findFirst && !resources.isEmpty())
                     {
-                        resources.add((IFile) file);
+                        return resources;
                     }
                 }
             }
@@ -230,49 +307,37 @@ public class LocalTapestryContext extends TapestryContext
         }
     }
     
-    private List<IFile> findMembers(IContainer container, String path)
+    private List<IFile> findMembers(IContainer folder, FileNameQuery query, boolean findFirst) throws CoreException
     {
         List<IFile> resources = new ArrayList<IFile>();
         
-        if (path.contains("*"))
+        if (query.isLocalized())
         {
-            //  Find files by mask
-            int slashIndex = path.lastIndexOf("/");
-            
-            String parentPath = slashIndex < 0 ? "/" : path.substring(0, slashIndex);
-            String mask = slashIndex < 0 ? path : path.substring(slashIndex + 1);
-            
-            Pattern pattern = Pattern.compile(mask);
-            
-            IResource resource = container.findMember(parentPath);
-            
-            if (resource instanceof IFolder)
+            //  Localized variants can only be found by listing the folder
+            for (IResource member : folder.members())
             {
-                try
-                {
-                    IResource[] members = ((IFolder) resource).members();
-                    
-                    for (IResource member : members)
-                    {
-                        if (pattern.matcher(member.getName()).matches())
-                        {
-                            resources.add((IFile) member);
-                        }
-                    }
-                }
-                catch (CoreException e)
+                if (member.getType() == IResource.FILE && query.matches(member.getName()))
                 {
-                    Activator.getDefault().logError("Error finding files by mask", e);
+                    resources.add((IFile) member);
                 }
             }
         }
         else
         {
-            //  Exact match
-            IResource resource = container.findMember(path);
-            if (resource != null && resource instanceof IFile)
+            //  Exact names, best candidates first
+            for (String fileName : query.getFileNames())
             {
-                resources.add((IFile) resource);
+                IResource resource = folder.findMember(fileName);
+                
+                if (resource instanceof IFile)
+                {
+                    resources.add((IFile) resource);
+                    
+                    if (findFirst)
+                    {
+                        break;
+                    }
+                }
             }
         }
         return resources;
@@ -3,7 +3,6 @@ package com.anjlab.eclipse.tapestry5;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 
@@ -24,7 +23,7 @@ public class LocalTapestryModule extends TapestryModule
         {
             resource = getModuleClass().getUnderlyingResource();
             IFile file = (IFile) resource.getAdapter(IFile.class);
-            return TapestryUtils.createTapestryContext(file).getInitialFile();
+            return TapestryUtils.getTapestryFile(file);
         }
         catch (JavaModelException e)
         {
@@ -42,29 +41,17 @@ public class LocalTapestryModule extends TapestryModule
     @Override
     public TapestryFile findJavaFileCaseInsensitive(String path)
     {
-        try
+        ProjectTopology topology = ProjectTopology.get(getModuleClass().getJavaProject().getProject());
+        
+        for (IContainer container : topology.getSourceFolders())
         {
-            for (IPackageFragmentRoot root : getModuleClass().getJavaProject().getAllPackageFragmentRoots())
+            IFile javaFile = getProject().getSourceFolderIndex().findFile(container, path);
+            
+            if (javaFile != null)
             {
-                if (!EclipseUtils.isSourceFolder(root))
-                {
-                    continue;
-                }
-                
-                IContainer container = (IContainer) root.getCorrespondingResource().getAdapter(IContainer.class);
-                
-                IFile javaFile = EclipseUtils.findFileCaseInsensitive(container, path);
-                
-                if (javaFile != null)
-                {
-                    return TapestryUtils.createTapestryContext(javaFile).getInitialFile();
-                }
+                return TapestryUtils.getTapestryFile(javaFile);
             }
         }
-        catch (JavaModelException e)
-        {
-            //  Ignore
-        }
         return null;
     }
 }
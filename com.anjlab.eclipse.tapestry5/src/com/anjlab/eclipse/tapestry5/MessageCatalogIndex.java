@@ -0,0 +1,776 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Message keys of the localized properties files in the source folders and web application context roots of a project,
+ * including source folders of the library projects it depends on.
+ * <p>
+ * Properties files are grouped into catalogs by their path relative to the root without locale suffix and extension,
+ * i.e. <code>com/example/pages/Index</code> for <code>com/example/pages/Index_de.properties</code>,
+ * or <code>WEB-INF/app</code> for the application catalog. Catalog of a component has the same name as its class,
+ * no matter which source folder the properties files are in.
+ * <p>
+ * The index is built once by {@link #build(IProgressMonitor)}, after that only the files reported
+ * by resource deltas are parsed again, see {@link #update(IProgressMonitor)}.
+ */
+public class MessageCatalogIndex
+{
+    /**
+     * Message key of a properties file.
+     */
+    public static class Message
+    {
+        private final IFile file;
+        private final String locale;
+        private final String key;
+        private final String value;
+        private final int offset;
+        private final int length;
+        
+        private Message(IFile file, String locale, String key, String value, int offset, int length)
+        {
+            this.file = file;
+            this.locale = locale;
+            this.key = key;
+            this.value = value;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        public IFile getFile()
+        {
+            return file;
+        }
+        
+        /**
+         * @return Locale suffix of the file, i.e. <code>de</code> or <code>pt_BR</code>, or empty string for the default locale.
+         */
+        public String getLocale()
+        {
+            return locale;
+        }
+        
+        public String getKey()
+        {
+            return key;
+        }
+        
+        public String getValue()
+        {
+            return value;
+        }
+        
+        /**
+         * @return Offset of the key in the file.
+         */
+        public int getOffset()
+        {
+            return offset;
+        }
+        
+        public int getLength()
+        {
+            return length;
+        }
+    }
+    
+    private static class CatalogFile
+    {
+        private final IFile file;
+        private final String catalog;
+        private final String locale;
+        
+        //  Keys in the order they appear in the file
+        private final Map<String, Message> messages;
+        
+        public CatalogFile(IFile file, String catalog, String locale, Map<String, Message> messages)
+        {
+            this.file = file;
+            this.catalog = catalog;
+            this.locale = locale;
+            this.messages = messages;
+        }
+    }
+    
+    private static final Comparator<CatalogFile> BY_LOCALE = new Comparator<CatalogFile>()
+    {
+        @Override
+        public int compare(CatalogFile o1, CatalogFile o2)
+        {
+            return o1.locale.compareTo(o2.locale);
+        }
+    };
+    
+    private final IProject project;
+    
+    //  Parsed files by their full path
+    private final Map<IPath, CatalogFile> files = new HashMap<IPath, CatalogFile>();
+    
+    //  Files of the catalogs, default locale first
+    private final Map<String, List<CatalogFile>> catalogs = new HashMap<String, List<CatalogFile>>();
+    
+    //  Files changed since the last update with the number of the change, so that build()
+    //  only forgets the changes recorded before it started
+    private final Map<IFile, Long> changedFiles = new LinkedHashMap<IFile, Long>();
+    
+    private long changeCount;
+    
+    private boolean built;
+    
+    public MessageCatalogIndex(IProject project)
+    {
+        this.project = project;
+    }
+    
+    /**
+     * @return Name of the catalog of the properties file or of the class or template of a component,
+     *         i.e. <code>com/example/pages/Index</code>.
+     */
+    public static String getCatalogName(IContainer root, IFile file)
+    {
+        IPath folderPath = file.getParent().getFullPath().removeFirstSegments(root.getFullPath().segmentCount());
+        
+        String baseName = FileNameQuery.getUnlocalizedBaseName(file.getName());
+        
+        return folderPath.segmentCount() == 0
+             ? baseName
+             : folderPath.toPortableString() + "/" + baseName;
+    }
+    
+    private static String getLocale(String fileName)
+    {
+        String baseName = FileNameQuery.getBaseName(fileName);
+        
+        int localeIndex = FileNameQuery.getLocaleIndex(baseName);
+        
+        return localeIndex > 0 ? baseName.substring(localeIndex + 1) : "";
+    }
+    
+    private static boolean isIndexed(String fileName)
+    {
+        return fileName.endsWith(".properties");
+    }
+    
+    private List<IContainer> getRoots()
+    {
+        ProjectTopology topology = ProjectTopology.get(project);
+        
+        List<IContainer> roots = new ArrayList<IContainer>(topology.getSourceFolders());
+        roots.addAll(topology.getWebapps());
+        return roots;
+    }
+    
+    /**
+     * Parses all properties files in the source folders and web application context roots of the project.
+     */
+    public void build(IProgressMonitor monitor)
+    {
+        long buildChangeCount;
+        
+        synchronized (this)
+        {
+            //  Changes recorded from now on may be missed by the scan and will be applied by update()
+            buildChangeCount = changeCount;
+        }
+        
+        List<CatalogFile> catalogFiles = new ArrayList<CatalogFile>();
+        
+        for (final IContainer root : getRoots())
+        {
+            final List<IFile> rootFiles = new ArrayList<IFile>();
+            
+            try
+            {
+                root.accept(new IResourceProxyVisitor()
+                {
+                    @Override
+                    public boolean visit(IResourceProxy proxy) throws CoreException
+                    {
+                        if (proxy.isDerived())
+                        {
+                            return false;
+                        }
+                        
+                        if (proxy.getType() == IResource.FILE && isIndexed(proxy.getName()))
+                        {
+                            rootFiles.add((IFile) proxy.requestResource());
+                        }
+                        return true;
+                    }
+                }, IResource.NONE);
+            }
+            catch (CoreException e)
+            {
+                Activator.getDefault().logWarning("Error indexing messages in " + root.getFullPath(), e);
+            }
+            
+            for (IFile file : rootFiles)
+            {
+                if (monitor.isCanceled())
+                {
+                    throw new OperationCanceledException();
+                }
+                
+                CatalogFile catalogFile = parse(root, file);
+                
+                if (catalogFile != null)
+                {
+                    catalogFiles.add(catalogFile);
+                }
+            }
+        }
+        
+        synchronized (this)
+        {
+            files.clear();
+            catalogs.clear();
+            
+            for (CatalogFile catalogFile : catalogFiles)
+            {
+                add(catalogFile);
+            }
+            
+            for (Iterator<Long> iterator = changedFiles.values().iterator(); iterator.hasNext();)
+            {
+                if (iterator.next() <= buildChangeCount)
+                {
+                    iterator.remove();
+                }
+            }
+            
+            built = true;
+        }
+        
+        update(monitor);
+    }
+    
+    public synchronized boolean isBuilt()
+    {
+        return built;
+    }
+    
+    /**
+     * Records properties files changed by the resource delta of the workspace.
+     *
+     * @return <code>true</code> if there are changes to be applied by {@link #update(IProgressMonitor)}.
+     */
+    public boolean resourceChanged(IResourceDelta workspaceDelta)
+    {
+        final List<IFile> changed = new ArrayList<IFile>();
+        
+        for (IContainer root : getRoots())
+        {
+            IResourceDelta rootDelta = workspaceDelta.findMember(root.getFullPath());
+            
+            if (rootDelta == null)
+            {
+                continue;
+            }
+            
+            try
+            {
+                rootDelta.accept(new IResourceDeltaVisitor()
+                {
+                    @Override
+                    public boolean visit(IResourceDelta delta) throws CoreException
+                    {
+                        IResource resource = delta.getResource();
+                        
+                        if (resource.getType() != IResource.FILE)
+                        {
+                            return true;
+                        }
+                        
+                        if (isIndexed(resource.getName())
+                                && (delta.getKind() != IResourceDelta.CHANGED
+                                    || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0))
+                        {
+                            changed.add((IFile) resource);
+                        }
+                        
+                        return false;
+                    }
+                });
+            }
+            catch (CoreException e)
+            {
+                Activator.getDefault().logError("Error processing resource delta", e);
+            }
+        }
+        
+        synchronized (this)
+        {
+            //  Changes are recorded during the build too, the scan may have already visited the file
+            for (IFile file : changed)
+            {
+                changedFiles.remove(file);
+                changedFiles.put(file, ++changeCount);
+            }
+            
+            return !changedFiles.isEmpty();
+        }
+    }
+    
+    public synchronized boolean hasChanges()
+    {
+        return !changedFiles.isEmpty();
+    }
+    
+    /**
+     * Parses the files recorded by {@link #resourceChanged(IResourceDelta)} again.
+     *
+     * Changes are kept until the index is built.
+     *
+     * @return <code>true</code> if any files were parsed.
+     */
+    public boolean update(IProgressMonitor monitor)
+    {
+        List<IFile> changed;
+        
+        synchronized (this)
+        {
+            if (!built)
+            {
+                return false;
+            }
+            
+            changed = new ArrayList<IFile>(changedFiles.keySet());
+            
+            changedFiles.clear();
+        }
+        
+        ProjectTopology topology = ProjectTopology.get(project);
+        
+        for (IFile file : changed)
+        {
+            if (monitor.isCanceled())
+            {
+                synchronized (this)
+                {
+                    //  Keep the rest for the next update
+                    for (IFile rest : changed.subList(changed.indexOf(file), changed.size()))
+                    {
+                        if (!changedFiles.containsKey(rest))
+                        {
+                            changedFiles.put(rest, ++changeCount);
+                        }
+                    }
+                }
+                throw new OperationCanceledException();
+            }
+            
+            IContainer root = topology.findRoot(file);
+            
+            CatalogFile catalogFile = file.exists() && root != null ? parse(root, file) : null;
+            
+            synchronized (this)
+            {
+                remove(file.getFullPath());
+                
+                if (catalogFile != null)
+                {
+                    add(catalogFile);
+                }
+            }
+        }
+        
+        return !changed.isEmpty();
+    }
+    
+    private void add(CatalogFile catalogFile)
+    {
+        files.put(catalogFile.file.getFullPath(), catalogFile);
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalogFile.catalog);
+        
+        if (catalogFiles == null)
+        {
+            catalogFiles = new ArrayList<CatalogFile>(1);
+            catalogs.put(catalogFile.catalog, catalogFiles);
+        }
+        
+        catalogFiles.add(catalogFile);
+        
+        Collections.sort(catalogFiles, BY_LOCALE);
+    }
+    
+    private void remove(IPath path)
+    {
+        CatalogFile catalogFile = files.remove(path);
+        
+        if (catalogFile == null)
+        {
+            return;
+        }
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalogFile.catalog);
+        
+        if (catalogFiles != null)
+        {
+            catalogFiles.remove(catalogFile);
+            
+            if (catalogFiles.isEmpty())
+            {
+                catalogs.remove(catalogFile.catalog);
+            }
+        }
+    }
+    
+    public synchronized boolean hasCatalog(String catalog)
+    {
+        return catalogs.containsKey(catalog);
+    }
+    
+    /**
+     * @return Properties files of the catalog, default locale first.
+     */
+    public synchronized List<IFile> getFiles(String catalog)
+    {
+        List<IFile> result = new ArrayList<IFile>();
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalog);
+        
+        if (catalogFiles != null)
+        {
+            for (CatalogFile catalogFile : catalogFiles)
+            {
+                result.add(catalogFile.file);
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return Keys of all locales of the catalog, sorted.
+     */
+    public synchronized Set<String> getKeys(String catalog)
+    {
+        Set<String> keys = new TreeSet<String>();
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalog);
+        
+        if (catalogFiles != null)
+        {
+            for (CatalogFile catalogFile : catalogFiles)
+            {
+                keys.addAll(catalogFile.messages.keySet());
+            }
+        }
+        
+        return keys;
+    }
+    
+    /**
+     * @return Message with the given key in all locales of the catalog that have it, default locale first.
+     */
+    public synchronized List<Message> findMessages(String catalog, String key)
+    {
+        List<Message> result = new ArrayList<Message>();
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalog);
+        
+        if (catalogFiles != null)
+        {
+            for (CatalogFile catalogFile : catalogFiles)
+            {
+                Message message = catalogFile.messages.get(key);
+                
+                if (message != null)
+                {
+                    result.add(message);
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return Properties files of the catalog that don't have the key while other files of the catalog do,
+     *         or empty list if the key is not in the catalog at all.
+     */
+    public synchronized List<IFile> findFilesMissingKey(String catalog, String key)
+    {
+        List<IFile> result = new ArrayList<IFile>();
+        
+        List<CatalogFile> catalogFiles = catalogs.get(catalog);
+        
+        if (catalogFiles == null)
+        {
+            return result;
+        }
+        
+        boolean found = false;
+        
+        for (CatalogFile catalogFile : catalogFiles)
+        {
+            if (catalogFile.messages.containsKey(key))
+            {
+                found = true;
+            }
+            else
+            {
+                result.add(catalogFile.file);
+            }
+        }
+        
+        return found ? result : Collections.<IFile>emptyList();
+    }
+    
+    /**
+     * @return Keys of the catalog that are missing in some of its locales, with properties files that miss them.
+     */
+    public synchronized Map<String, List<IFile>> findMissingKeys(String catalog)
+    {
+        Map<String, List<IFile>> result = new TreeMap<String, List<IFile>>();
+        
+        for (String key : getKeys(catalog))
+        {
+            List<IFile> missing = findFilesMissingKey(catalog, key);
+            
+            if (!missing.isEmpty())
+            {
+                result.put(key, missing);
+            }
+        }
+        
+        return result;
+    }
+    
+    private CatalogFile parse(IContainer root, IFile file)
+    {
+        String text;
+        try
+        {
+            text = TapestryUtils.readToEnd(file);
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logWarning("Error indexing messages in " + file.getFullPath(), e);
+            
+            return null;
+        }
+        
+        if (text == null)
+        {
+            return null;
+        }
+        
+        String locale = getLocale(file.getName());
+        
+        Map<String, Message> messages = new LinkedHashMap<String, Message>();
+        
+        int length = text.length();
+        int position = 0;
+        
+        while (position < length)
+        {
+            position = skipWhitespace(text, position);
+            
+            if (position >= length)
+            {
+                break;
+            }
+            
+            char ch = text.charAt(position);
+            
+            if (ch == '\r' || ch == '\n')
+            {
+                position++;
+                continue;
+            }
+            
+            if (ch == '#' || ch == '!')
+            {
+                position = endOfLine(text, position);
+                continue;
+            }
+            
+            int keyStart = position;
+            
+            while (position < length)
+            {
+                ch = text.charAt(position);
+                
+                if (ch == '\\' && position + 1 < length)
+                {
+                    position += 2;
+                    continue;
+                }
+                
+                if (ch == '=' || ch == ':' || ch == ' ' || ch == '\t' || ch == '\f' || ch == '\r' || ch == '\n')
+                {
+                    break;
+                }
+                
+                position++;
+            }
+            
+            int keyEnd = position;
+            
+            //  Separator is either '=', ':' or whitespace, optionally surrounded with whitespace
+            position = skipWhitespace(text, position);
+            
+            if (position < length && (text.charAt(position) == '=' || text.charAt(position) == ':'))
+            {
+                position = skipWhitespace(text, position + 1);
+            }
+            
+            int valueStart = position;
+            
+            position = endOfLogicalLine(text, position);
+            
+            String key = unescape(text, keyStart, keyEnd);
+            
+            //  Last one of the duplicate keys wins, as in java.util.Properties
+            messages.put(key, new Message(file, locale, key, unescape(text, valueStart, position),
+                    keyStart, keyEnd - keyStart));
+        }
+        
+        return new CatalogFile(file, getCatalogName(root, file), locale, messages);
+    }
+    
+    private static int skipWhitespace(String text, int position)
+    {
+        while (position < text.length())
+        {
+            char ch = text.charAt(position);
+            
+            if (ch != ' ' && ch != '\t' && ch != '\f')
+            {
+                break;
+            }
+            
+            position++;
+        }
+        return position;
+    }
+    
+    private static int endOfLine(String text, int position)
+    {
+        while (position < text.length() && text.charAt(position) != '\n' && text.charAt(position) != '\r')
+        {
+            position++;
+        }
+        return position;
+    }
+    
+    /**
+     * @return Offset of the end of the line, lines that end with odd number of backslashes are continued on the next line.
+     */
+    private static int endOfLogicalLine(String text, int position)
+    {
+        while (position < text.length())
+        {
+            char ch = text.charAt(position);
+            
+            if (ch == '\\' && position + 1 < text.length())
+            {
+                //  Escaped character or line continuation
+                position += text.charAt(position + 1) == '\r' && position + 2 < text.length() && text.charAt(position + 2) == '\n'
+                          ? 3
+                          : 2;
+                continue;
+            }
+            
+            if (ch == '\r' || ch == '\n')
+            {
+                break;
+            }
+            
+            position++;
+        }
+        return position;
+    }
+    
+    private static String unescape(String text, int start, int end)
+    {
+        StringBuilder builder = new StringBuilder(end - start);
+        
+        int position = start;
+        
+        while (position < end)
+        {
+            char ch = text.charAt(position++);
+            
+            if (ch != '\\' || position >= end)
+            {
+                builder.append(ch);
+                continue;
+            }
+            
+            ch = text.charAt(position++);
+            
+            switch (ch)
+            {
+            case 't':
+                builder.append('\t');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case 'u':
+                if (position + 4 <= end)
+                {
+                    try
+                    {
+                        builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        //  Malformed escape, keep it as is
+                    }
+                }
+                builder.append(ch);
+                break;
+            case '\r':
+            case '\n':
+                //  Line continuation, leading whitespace of the next line is skipped
+                if (ch == '\r' && position < end && text.charAt(position) == '\n')
+                {
+                    position++;
+                }
+                position = Math.min(skipWhitespace(text, position), end);
+                break;
+            default:
+                builder.append(ch);
+                break;
+            }
+        }
+        
+        return builder.toString();
+    }
+}
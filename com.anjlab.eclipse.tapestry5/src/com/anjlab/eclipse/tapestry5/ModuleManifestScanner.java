@@ -0,0 +1,242 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Manifest;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.IJarEntryResource;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+
+/**
+ * Reads <code>Tapestry-Module-Classes</code> from manifests of the class path roots.
+ * <p>
+ * Roots that are not in the {@link TapestryModuleIndex} are read concurrently on a bounded pool,
+ * results are always returned in the order of the given roots.
+ * Reading is stopped with {@link OperationCanceledException} if the monitor gets cancelled.
+ */
+public class ModuleManifestScanner
+{
+    private static final int MAX_THREADS = 8;
+    
+    private static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
+    
+    private final TapestryModuleIndex index;
+    
+    public ModuleManifestScanner(TapestryModuleIndex index)
+    {
+        this.index = index;
+    }
+    
+    /**
+     * @return List of module class names for every root, in the same order as the roots.
+     */
+    public List<List<String>> readModuleClassNames(IProgressMonitor monitor, List<IPackageFragmentRoot> roots)
+    {
+        List<List<String>> moduleClassNames = new ArrayList<List<String>>(roots.size());
+        List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>(roots.size());
+        
+        ExecutorService executor = null;
+        
+        try
+        {
+            for (final IPackageFragmentRoot root : roots)
+            {
+                List<String> classNames = index.getModuleClassNames(root);
+                
+                Future<List<String>> future = null;
+                
+                if (classNames == null)
+                {
+                    if (executor == null)
+                    {
+                        executor = createExecutor(roots.size());
+                    }
+                    
+                    future = executor.submit(new Callable<List<String>>()
+                    {
+                        @Override
+                        public List<String> call() throws Exception
+                        {
+                            return readModuleClassNames(root);
+                        }
+                    });
+                }
+                
+                moduleClassNames.add(classNames);
+                futures.add(future);
+            }
+            
+            for (int i = 0; i < roots.size(); i++)
+            {
+                Future<List<String>> future = futures.get(i);
+                
+                if (future == null)
+                {
+                    continue;
+                }
+                
+                if (monitor.isCanceled())
+                {
+                    throw new OperationCanceledException();
+                }
+                
+                IPackageFragmentRoot root = roots.get(i);
+                
+                monitor.subTask("Reading " + root.getElementName() + "...");
+                
+                List<String> classNames = Collections.emptyList();
+                
+                try
+                {
+                    classNames = future.get();
+                    
+                    index.putModuleClassNames(root, classNames);
+                }
+                catch (ExecutionException e)
+                {
+                    Activator.getDefault().logError("Error reading manifest of " + root.getElementName(), e.getCause());
+                }
+                
+                moduleClassNames.set(i, classNames);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            for (int i = 0; i < moduleClassNames.size(); i++)
+            {
+                if (moduleClassNames.get(i) == null)
+                {
+                    moduleClassNames.set(i, Collections.<String>emptyList());
+                }
+            }
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+        
+        return moduleClassNames;
+    }
+    
+    private ExecutorService createExecutor(int taskCount)
+    {
+        int threadCount = Math.max(1, Math.min(taskCount,
+                Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+        
+        return Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Tapestry5 Manifest Scanner #" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    private List<String> readModuleClassNames(IPackageFragmentRoot root) throws CoreException
+    {
+        if (root.isArchive())
+        {
+            File archive = EclipseUtils.getArchiveFile(root);
+            
+            if (archive != null && archive.isFile())
+            {
+                try
+                {
+                    byte[] manifest = new ZipArchive(archive).readEntry(MANIFEST_PATH);
+                    
+                    return manifest == null
+                         ? Collections.<String>emptyList()
+                         : readModuleClassNames(new ByteArrayInputStream(manifest));
+                }
+                catch (IOException e)
+                {
+                    //  Unsupported or broken archive, let JDT try to read it
+                }
+            }
+        }
+        
+        return readModuleClassNamesFromJarEntries(root);
+    }
+    
+    private List<String> readModuleClassNamesFromJarEntries(IPackageFragmentRoot root) throws CoreException
+    {
+        List<String> moduleClassNames = new ArrayList<String>();
+        
+        for (Object obj : root.getNonJavaResources())
+        {
+            if (obj instanceof IJarEntryResource)
+            {
+                IJarEntryResource jarEntry = (IJarEntryResource) obj;
+                
+                if ("META-INF".equals(jarEntry.getName()))
+                {
+                    for (IJarEntryResource child : jarEntry.getChildren())
+                    {
+                        if ("MANIFEST.MF".equals(child.getName()))
+                        {
+                            InputStream contents = child.getContents();
+                            
+                            try
+                            {
+                                moduleClassNames.addAll(readModuleClassNames(contents));
+                            }
+                            catch (IOException e)
+                            {
+                                //  Ignore
+                            }
+                            finally
+                            {
+                                if (contents != null)
+                                {
+                                    try { contents.close(); } catch (IOException t)  { }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        
+        return moduleClassNames;
+    }
+    
+    private static List<String> readModuleClassNames(InputStream contents) throws IOException
+    {
+        Manifest manifest = new Manifest(contents);
+        
+        String classes = manifest.getMainAttributes().getValue("Tapestry-Module-Classes");
+        
+        if (classes == null)
+        {
+            return Collections.emptyList();
+        }
+        
+        return Arrays.asList(classes.split(","));
+    }
+}
@@ -0,0 +1,247 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IScopeContext;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Source folders and web application context roots of a project.
+ * <p>
+ * Context roots are read from the {@link #WEBAPP_ROOTS} project setting as comma separated
+ * project relative paths, or if it's not set, from the conventional locations: <code>src/main/webapp</code>
+ * of Maven and Gradle WAR plugin and <code>WebContent</code> of Eclipse WTP.
+ * <p>
+ * Looking these up through the Java model walks the resolved class path every time,
+ * so the topology is computed once and kept until the class path, the project description or the settings change,
+ * see {@link com.anjlab.eclipse.tapestry5.watchdog.ProjectTopologyWatchdog}.
+ */
+public class ProjectTopology
+{
+    public static final String WEBAPP_ROOTS = "webappRoots";
+    
+    public static final IPath SETTINGS_PATH = new Path(".settings/" + Activator.PLUGIN_ID + ".prefs");
+    
+    private static final List<IPath> CONVENTIONAL_WEBAPP_PATHS = Arrays.<IPath>asList(
+            new Path("src/main/webapp"),
+            new Path("WebContent"));
+    
+    private final IProject project;
+    
+    //  Source folders of the project and of the projects it depends on, in the class path order
+    private final List<IPackageFragmentRoot> sourceRoots = new ArrayList<IPackageFragmentRoot>();
+    private final List<IContainer> sourceFolders = new ArrayList<IContainer>();
+    
+    //  Configured or conventional locations of context roots, existing or not
+    private final List<IPath> webappPaths;
+    
+    //  Existing context roots, the first one is the primary
+    private final List<IContainer> webapps = new ArrayList<IContainer>();
+    
+    //  Source folders and web application context by their full paths
+    private final Map<IPath, IContainer> roots = new HashMap<IPath, IContainer>();
+    
+    private ProjectTopology(IProject project)
+    {
+        this.project = project;
+        
+        IJavaProject javaProject = JavaCore.create(project);
+        
+        try
+        {
+            if (javaProject.exists())
+            {
+                for (IPackageFragmentRoot root : javaProject.getAllPackageFragmentRoots())
+                {
+                    if (!EclipseUtils.isSourceFolder(root))
+                    {
+                        continue;
+                    }
+                    
+                    IResource resource = root.getCorrespondingResource();
+                    
+                    IContainer container = resource != null
+                                         ? (IContainer) resource.getAdapter(IContainer.class)
+                                         : null;
+                    
+                    if (container != null)
+                    {
+                        sourceRoots.add(root);
+                        sourceFolders.add(container);
+                        roots.put(container.getFullPath(), container);
+                    }
+                }
+            }
+        }
+        catch (JavaModelException e)
+        {
+            Activator.getDefault().logError("Error reading class path of " + project.getName(), e);
+        }
+        
+        webappPaths = readWebappPaths(project);
+        
+        for (IPath webappPath : webappPaths)
+        {
+            IResource webappResource = project.findMember(webappPath);
+            
+            if (webappResource instanceof IContainer && !webapps.contains(webappResource))
+            {
+                webapps.add((IContainer) webappResource);
+                roots.put(webappResource.getFullPath(), (IContainer) webappResource);
+            }
+        }
+    }
+    
+    private static List<IPath> readWebappPaths(IProject project)
+    {
+        String setting = Platform.getPreferencesService().getString(
+                Activator.PLUGIN_ID, WEBAPP_ROOTS, null, new IScopeContext[] { new ProjectScope(project) });
+        
+        if (setting == null || setting.trim().length() == 0)
+        {
+            return CONVENTIONAL_WEBAPP_PATHS;
+        }
+        
+        List<IPath> paths = new ArrayList<IPath>();
+        
+        for (String path : setting.split(","))
+        {
+            if (path.trim().length() > 0)
+            {
+                paths.add(new Path(path.trim()).makeRelative());
+            }
+        }
+        
+        return paths;
+    }
+    
+    public static ProjectTopology create(IProject project)
+    {
+        return new ProjectTopology(project);
+    }
+    
+    public IProject getProject()
+    {
+        return project;
+    }
+    
+    /**
+     * @return Source folders of the project and of the projects it depends on, in the class path order.
+     */
+    public List<IContainer> getSourceFolders()
+    {
+        return Collections.unmodifiableList(sourceFolders);
+    }
+    
+    /**
+     * @return Package fragment roots of {@link #getSourceFolders()}, in the same order.
+     */
+    public List<IPackageFragmentRoot> getSourceRoots()
+    {
+        return Collections.unmodifiableList(sourceRoots);
+    }
+    
+    /**
+     * @return Primary web application context root, or <code>null</code> if the project has none.
+     */
+    public IContainer getWebapp()
+    {
+        return webapps.isEmpty() ? null : webapps.get(0);
+    }
+    
+    /**
+     * @return Existing web application context roots, the primary one first.
+     */
+    public List<IContainer> getWebapps()
+    {
+        return Collections.unmodifiableList(webapps);
+    }
+    
+    /**
+     * @return Project relative paths of the web application context roots, including the ones that don't exist.
+     */
+    public List<IPath> getWebappPaths()
+    {
+        return Collections.unmodifiableList(webappPaths);
+    }
+    
+    public boolean isWebapp(IContainer container)
+    {
+        return container != null && webapps.contains(container);
+    }
+    
+    /**
+     * @return Source folder or web application context that contains the resource,
+     *         or <code>null</code> if the resource is not in any of them.
+     */
+    public IContainer findRoot(IResource resource)
+    {
+        for (IPath path = resource.getFullPath().removeLastSegments(1); path.segmentCount() > 0; path = path.removeLastSegments(1))
+        {
+            IContainer root = roots.get(path);
+            
+            if (root != null)
+            {
+                return root;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return Source folder that contains the resource, or <code>null</code> if the resource is not in a source folder.
+     */
+    public IContainer findSourceFolder(IResource resource)
+    {
+        for (IPath path = resource.getFullPath().removeLastSegments(1); path.segmentCount() > 0; path = path.removeLastSegments(1))
+        {
+            IContainer root = roots.get(path);
+            
+            if (root != null && !webapps.contains(root))
+            {
+                return root;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return <code>true</code> if adding or removing a container at the given full path changes this topology.
+     */
+    public boolean isAffectedBy(IPath containerPath)
+    {
+        //  Web application context root itself or one of its parents
+        for (IPath webappPath : webappPaths)
+        {
+            if (containerPath.isPrefixOf(project.getFullPath().append(webappPath)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return Topology of the project, cached until the class path, the project description
+     *         or the project settings change.
+     */
+    public static ProjectTopology get(IProject project)
+    {
+        return Activator.getDefault().getProjectTopology(project);
+    }
+}
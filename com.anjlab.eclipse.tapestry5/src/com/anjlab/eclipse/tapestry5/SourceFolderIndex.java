@@ -0,0 +1,292 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Case-insensitive index of files in the source folders of a project.
+ * <p>
+ * Every source folder is represented by a trie with lower-cased names of its members,
+ * so looking up a file is one hash probe per path segment no matter how many files are in the folders.
+ * Trie of a folder is built on first lookup and is then kept up to date from resource deltas.
+ */
+public class SourceFolderIndex
+{
+    private static class Node
+    {
+        //  Name of the resource with its original case
+        private final String name;
+        
+        //  null for files
+        private Map<String, Node> children;
+        
+        public Node(String name, boolean folder)
+        {
+            this.name = name;
+            this.children = folder ? new HashMap<String, Node>() : null;
+        }
+        
+        public boolean isFolder()
+        {
+            return children != null;
+        }
+    }
+    
+    private final Map<IPath, Node> sourceFolders = new HashMap<IPath, Node>();
+    
+    /**
+     * @return File with the given path relative to the source folder, compared ignoring case,
+     *         or <code>null</code> if there's no such file.
+     */
+    public synchronized IFile findFile(IContainer sourceFolder, String path)
+    {
+        Node node = sourceFolders.get(sourceFolder.getFullPath());
+        
+        if (node == null)
+        {
+            node = createFolderNode(sourceFolder);
+            
+            sourceFolders.put(sourceFolder.getFullPath(), node);
+        }
+        
+        StringBuilder realPath = new StringBuilder();
+        
+        for (String segment : (path.startsWith("/") ? path.substring(1) : path).split("/"))
+        {
+            if (!node.isFolder())
+            {
+                return null;
+            }
+            
+            node = node.children.get(segment.toLowerCase());
+            
+            if (node == null)
+            {
+                return null;
+            }
+            
+            if (realPath.length() > 0)
+            {
+                realPath.append('/');
+            }
+            
+            realPath.append(node.name);
+        }
+        
+        return node.isFolder() ? null : sourceFolder.getFile(new Path(realPath.toString()));
+    }
+    
+    private static Node createFolderNode(IContainer folder)
+    {
+        final Node root = new Node(folder.getName(), true);
+        
+        final int rootSegmentCount = folder.getFullPath().segmentCount();
+        
+        try
+        {
+            folder.accept(new IResourceProxyVisitor()
+            {
+                @Override
+                public boolean visit(IResourceProxy proxy) throws CoreException
+                {
+                    IPath path = proxy.requestFullPath();
+                    
+                    if (path.segmentCount() > rootSegmentCount)
+                    {
+                        addNode(root, path.removeFirstSegments(rootSegmentCount), proxy.getType() != IResource.FILE);
+                    }
+                    
+                    return true;
+                }
+            }, IResource.NONE);
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logWarning("Error indexing " + folder.getFullPath(), e);
+        }
+        
+        return root;
+    }
+    
+    private static void addNode(Node root, IPath relativePath, boolean folder)
+    {
+        Node parent = findNode(root, relativePath.removeLastSegments(1));
+        
+        if (parent == null || !parent.isFolder())
+        {
+            return;
+        }
+        
+        String name = relativePath.lastSegment();
+        
+        String key = name.toLowerCase();
+        
+        //  Keep the first of the names that only differ in case
+        if (!parent.children.containsKey(key))
+        {
+            parent.children.put(key, new Node(name, folder));
+        }
+    }
+    
+    private static void removeNode(Node root, IPath relativePath, IContainer parentFolder)
+    {
+        Node parent = findNode(root, relativePath.removeLastSegments(1));
+        
+        if (parent == null || !parent.isFolder())
+        {
+            return;
+        }
+        
+        String name = relativePath.lastSegment();
+        
+        String key = name.toLowerCase();
+        
+        Node node = parent.children.get(key);
+        
+        if (node == null || !node.name.equals(name))
+        {
+            return;
+        }
+        
+        parent.children.remove(key);
+        
+        //  Another name that only differs in case may still be there
+        try
+        {
+            for (IResource member : parentFolder.members())
+            {
+                if (member.getName().equalsIgnoreCase(name) && !member.getName().equals(name))
+                {
+                    parent.children.put(key, member instanceof IContainer
+                            ? createFolderNode((IContainer) member)
+                            : new Node(member.getName(), false));
+                    break;
+                }
+            }
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logWarning("Error indexing " + parentFolder.getFullPath(), e);
+        }
+    }
+    
+    private static Node findNode(Node root, IPath relativePath)
+    {
+        Node node = root;
+        
+        for (String segment : relativePath.segments())
+        {
+            if (!node.isFolder())
+            {
+                return null;
+            }
+            
+            node = node.children.get(segment.toLowerCase());
+            
+            if (node == null)
+            {
+                return null;
+            }
+        }
+        
+        return node;
+    }
+    
+    /**
+     * Applies resource delta of the workspace to the indexed source folders.
+     */
+    public synchronized void resourceChanged(IResourceDelta workspaceDelta)
+    {
+        for (Map.Entry<IPath, Node> entry : new ArrayList<Map.Entry<IPath, Node>>(sourceFolders.entrySet()))
+        {
+            IPath folderPath = entry.getKey();
+            
+            IResourceDelta folderDelta = workspaceDelta.findMember(folderPath);
+            
+            if (folderDelta == null)
+            {
+                continue;
+            }
+            
+            if (folderDelta.getKind() == IResourceDelta.REMOVED
+                    || folderDelta.getKind() == IResourceDelta.ADDED)
+            {
+                //  Will be indexed again on the next lookup
+                sourceFolders.remove(folderPath);
+                continue;
+            }
+            
+            final Node root = entry.getValue();
+            
+            final int rootSegmentCount = folderPath.segmentCount();
+            
+            try
+            {
+                folderDelta.accept(new IResourceDeltaVisitor()
+                {
+                    @Override
+                    public boolean visit(IResourceDelta delta) throws CoreException
+                    {
+                        IPath relativePath = delta.getFullPath().removeFirstSegments(rootSegmentCount);
+                        
+                        if (relativePath.segmentCount() == 0)
+                        {
+                            return true;
+                        }
+                        
+                        switch (delta.getKind())
+                        {
+                        case IResourceDelta.ADDED:
+                            
+                            IResource resource = delta.getResource();
+                            
+                            if (resource instanceof IContainer)
+                            {
+                                Node parent = findNode(root, relativePath.removeLastSegments(1));
+                                
+                                if (parent != null && parent.isFolder()
+                                        && !parent.children.containsKey(resource.getName().toLowerCase()))
+                                {
+                                    parent.children.put(resource.getName().toLowerCase(),
+                                            createFolderNode((IContainer) resource));
+                                }
+                                
+                                //  Whole sub-tree is indexed already
+                                return false;
+                            }
+                            
+                            addNode(root, relativePath, false);
+                            
+                            return false;
+                        
+                        case IResourceDelta.REMOVED:
+                            
+                            removeNode(root, relativePath, delta.getResource().getParent());
+                            
+                            return false;
+                        }
+                        
+                        return true;
+                    }
+                });
+            }
+            catch (CoreException e)
+            {
+                //  Start over on the next lookup
+                sourceFolders.remove(folderPath);
+            }
+        }
+    }
+}
@@ -5,26 +5,30 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.IAnnotation;
 import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IMemberValuePair;
-import org.eclipse.jdt.core.ISourceRange;
-import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 
 public abstract class TapestryContext
 {
-    public static interface FileNameBuilder
+    /**
+     * Files related to a Java or template file: its complement file and localized properties files.
+     */
+    protected static class RelatedFiles
     {
-        String getFileName(String fileName, String fileExtension);
+        private final TapestryFile complementFile;
+        private final List<TapestryFile> propertiesFiles;
+        
+        public RelatedFiles(TapestryFile complementFile, List<TapestryFile> propertiesFiles)
+        {
+            this.complementFile = complementFile;
+            this.propertiesFiles = propertiesFiles;
+        }
     }
 
     private List<TapestryFile> files;
@@ -55,7 +59,7 @@ public abstract class TapestryContext
             
             @Override
             public List<TapestryFile> findTapestryFiles(TapestryFile forFile,
-                    boolean findFirst, FileNameBuilder fileNameBuilder)
+                    boolean findFirst, FileNameQuery query)
             {
                 return Collections.emptyList();
             }
@@ -102,6 +106,17 @@ public abstract class TapestryContext
     }
     
     private void addImports()
+    {
+        for (ImportedAsset asset : findImports())
+        {
+            files.add(new AssetReference(getJavaFile(), asset.getSourceRange(), asset.getPath()));
+        }
+    }
+    
+    /**
+     * @return Assets imported by the Java file of this context.
+     */
+    protected List<ImportedAsset> findImports()
     {
         ICompilationUnit compilationUnit = null;
         
@@ -111,31 +126,27 @@ public abstract class TapestryContext
             
             if (compilationUnit == null)
             {
-                return;
+                return Collections.emptyList();
             }
             
-            for (IType type : compilationUnit.getAllTypes())
+            ImportCache importCache = Activator.getDefault().getImportCache();
+            
+            List<ImportedAsset> imports = importCache.get(compilationUnit);
+            
+            if (imports == null)
             {
-                for (IAnnotation annotation : type.getAnnotations())
-                {
-                    if (TapestryUtils.isTapestryImportAnnotation(annotation))
-                    {
-                        IMemberValuePair[] pairs = annotation.getMemberValuePairs();
-                        for (IMemberValuePair pair : pairs)
-                        {
-                            if ("library".equals(pair.getMemberName())
-                                    || "stylesheet".equals(pair.getMemberName()))
-                            {
-                                processImport(annotation, pair.getMemberName(), pair.getValue());
-                            }
-                        }
-                    }
-                }
+                imports = new ImportAnnotationScanner().findImports(compilationUnit);
+                
+                importCache.put(compilationUnit, imports);
             }
+            
+            return imports;
         }
         catch (JavaModelException e)
         {
             Activator.getDefault().logError("Error inspecting compilation unit", e);
+            
+            return Collections.emptyList();
         }
         finally
         {
@@ -153,35 +164,6 @@ public abstract class TapestryContext
 
     protected abstract ICompilationUnit getCompilationUnit();
     
-    private void processImport(IAnnotation annotation, String type, Object value)
-    {
-        if (value instanceof Object[])
-        {
-            for (Object item : (Object[])value)
-            {
-                processImportedFile(annotation, type, (String) item);
-            }
-        }
-        else if (value instanceof String)
-        {
-            processImportedFile(annotation, type, (String) value);
-        }
-    }
-    
-    private void processImportedFile(IAnnotation annotation, String type, String fileName)
-    {
-        ISourceRange sourceRange = null;
-        try
-        {
-            sourceRange = annotation.getSourceRange();
-        }
-        catch (JavaModelException e)
-        {
-            Activator.getDefault().logError("Error getting annotation location", e);
-        }
-        files.add(new AssetReference(getJavaFile(), sourceRange, fileName));
-    }
-    
     public List<TapestryFile> getFiles()
     {
         return Collections.unmodifiableList(files);
@@ -213,43 +195,9 @@ public abstract class TapestryContext
     
     private void initFromImportedFile(TapestryFile file)
     {
-        List<TapestryFile> files = findTapestryFiles(file, true, new TapestryContext.FileNameBuilder()
-        {
-            @Override
-            public String getFileName(String fileName, String fileExtension)
-            {
-                return fileName.substring(0, fileName.lastIndexOf(fileExtension))
-                        + codeDesignExtensionMappings().get("tml");
-            }
-        });
-        
-        if (files.isEmpty())
-        {
-            //  Support alternative naming of the asset files: lower-case-with-dashes
-            files = findTapestryFiles(file, true, new TapestryContext.FileNameBuilder()
-            {
-                @Override
-                public String getFileName(String fileName, String fileExtension)
-                {
-                    StringBuilder builder = new StringBuilder();
-                    String[] pathParts = fileName.split("/");
-                    for (int i = 0; i < pathParts.length - 1; i++)
-                    {
-                        builder.append(pathParts[i]).append("/");
-                    }
-                    
-                    String[] parts = pathParts[pathParts.length - 1].split("-");
-                    for (String part : parts)
-                    {
-                        builder.append(Character.toUpperCase(part.charAt(0)))
-                               .append(part.substring(1));
-                    }
-                    fileName = builder.toString();
-                    return fileName.substring(0, fileName.lastIndexOf(fileExtension))
-                            + codeDesignExtensionMappings().get("tml");
-                }
-            });
-        }
+        //  Support alternative naming of the asset files: lower-case-with-dashes
+        List<TapestryFile> files = findTapestryFiles(file, true,
+                FileNameQuery.forSibling(file, codeDesignExtensionMappings().get("tml")).withCamelCaseVariant());
         
         if (!files.isEmpty())
         {
@@ -269,21 +217,8 @@ public abstract class TapestryContext
     
     private void initFromPropertiesFile(TapestryFile file)
     {
-        List<TapestryFile> files = findTapestryFiles(file, true, new TapestryContext.FileNameBuilder()
-        {
-            @Override
-            public String getFileName(String fileName, String fileExtension)
-            {
-                Matcher matcher = getLocalizedPropertiesPattern().matcher(fileName);
-                String codeExtension = codeDesignExtensionMappings().get("tml");
-                if (matcher.find())
-                {
-                    return matcher.group(1) + "." + codeExtension;
-                }
-                return fileName.substring(0, fileName.lastIndexOf(fileExtension)) + codeExtension;
-            }
-
-        });
+        List<TapestryFile> files = findTapestryFiles(file, true, new FileNameQuery(
+                "", FileNameQuery.getUnlocalizedBaseName(file.getName()), codeDesignExtensionMappings().get("tml")));
         
         if (!files.isEmpty())
         {
@@ -297,15 +232,30 @@ public abstract class TapestryContext
     
     private void initFromJavaOrTemplateFile(TapestryFile file)
     {
-        addWithComplementFile(file);
-        addPropertiesFiles(file);
+        RelatedFiles relatedFiles = findRelatedFiles(file);
+        
+        addWithComplementFile(file, relatedFiles.complementFile);
+        this.files.addAll(relatedFiles.propertiesFiles);
         addImports();
     }
     
+    /**
+     * Finds complement file and localized properties files of the Java or template file.
+     * Default implementation looks for each of them separately.
+     */
+    protected RelatedFiles findRelatedFiles(TapestryFile file)
+    {
+        return new RelatedFiles(findComplementFile(file), findPropertiesFiles(file));
+    }
+    
     private void addWithComplementFile(TapestryFile file)
+    {
+        addWithComplementFile(file, findComplementFile(file));
+    }
+    
+    private void addWithComplementFile(TapestryFile file, TapestryFile complementFile)
     {
         this.files.add(file);
-        TapestryFile complementFile = findComplementFile(file);
         if (complementFile != null)
         {
             if (complementFile.isJavaFile())
@@ -322,32 +272,13 @@ public abstract class TapestryContext
     
     private void addPropertiesFiles(TapestryFile file)
     {
-        List<TapestryFile> propertiesFiles = findTapestryFiles(file, false, new TapestryContext.FileNameBuilder()
-        {
-            @Override
-            public String getFileName(String fileName, String fileExtension)
-            {
-                Matcher matcher = getLocalizedPropertiesPattern().matcher(fileName);
-                
-                String propertiesSuffix = "(|_.*)\\.properties";
-                
-                if (matcher.find())
-                {
-                    return matcher.group(1) + propertiesSuffix;
-                }
-                return fileName.substring(0, fileName.lastIndexOf(fileExtension) - 1) + propertiesSuffix;
-            }
-        });
-        
-        for (TapestryFile properties : propertiesFiles)
-        {
-            this.files.add(properties);
-        }
+        this.files.addAll(findPropertiesFiles(file));
     }
     
-    private Pattern getLocalizedPropertiesPattern()
+    private List<TapestryFile> findPropertiesFiles(TapestryFile file)
     {
-        return Pattern.compile("([^_]*)(_.*)+\\.properties");
+        return findTapestryFiles(file, false, new FileNameQuery(
+                "", FileNameQuery.getUnlocalizedBaseName(file.getName()), "properties").localized());
     }
     
     public boolean contains(IFile file)
@@ -355,6 +286,28 @@ public abstract class TapestryContext
         return contains(new LocalFile(this, file));
     }
     
+    /**
+     * @return File of this context for the given file, or <code>null</code> if the file is not in this context.
+     */
+    public TapestryFile findFile(IFile file)
+    {
+        if (initialFile instanceof LocalFile && file.equals(((LocalFile) initialFile).getFile()))
+        {
+            return initialFile;
+        }
+        
+        LocalFile localFile = new LocalFile(this, file);
+        
+        for (TapestryFile f : files)
+        {
+            if (f.equals(localFile))
+            {
+                return f;
+            }
+        }
+        return null;
+    }
+    
     public boolean contains(TapestryFile file)
     {
         if (file == null)
@@ -482,25 +435,18 @@ public abstract class TapestryContext
         }
     }
 
-    public abstract List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameBuilder fileNameBuilder);
+    public abstract List<TapestryFile> findTapestryFiles(TapestryFile forFile, boolean findFirst, FileNameQuery query);
 
     public TapestryFile findComplementFile(TapestryFile file)
     {
-        List<TapestryFile> files = findTapestryFiles(file, true, new TapestryContext.FileNameBuilder()
+        String complementExtension = codeDesignExtensionMappings().get(file.getFileExtension());
+        
+        if (complementExtension == null)
         {
-            @Override
-            public String getFileName(String fileName, String fileExtension)
-            {
-                String complementExtension = codeDesignExtensionMappings().get(fileExtension);
-                
-                if (complementExtension == null)
-                {
-                    throw new IllegalArgumentException();
-                }
-                
-                return fileName.substring(0, fileName.lastIndexOf(fileExtension)) + complementExtension;
-            }
-        });
+            throw new IllegalArgumentException();
+        }
+        
+        List<TapestryFile> files = findTapestryFiles(file, true, FileNameQuery.forSibling(file, complementExtension));
         
         return !files.isEmpty() ? files.get(0) : null;
     }
@@ -0,0 +1,255 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Bounded LRU cache of {@link LocalTapestryContext}s keyed by the file the context was created for
+ * and by the Java, template and properties files of the context, so that all files of a page or component
+ * share one context instance. Use {@link TapestryContext#findFile(IFile)} to get the file of a shared context.
+ * <p>
+ * Building a context looks for the complement file, localized properties and <code>@Import</code>s,
+ * so switching between the editors of one page would repeat the same file system lookups over and over.
+ * Contexts are dropped from the cache when a file of the context is removed, when its Java file is changed,
+ * or when a file that could become part of the context, i.e. a file with the same base name, is added or removed.
+ */
+public class TapestryContextCache
+{
+    private static final int MAX_SIZE = 64;
+    
+    private static class CacheEntry
+    {
+        private final TapestryContext context;
+        
+        //  Files the entry is registered for in the cache
+        private final Set<IFile> keys = new HashSet<IFile>();
+        
+        //  Full paths of the files of the context when it was created, the context may be changed later
+        private final Set<IPath> paths = new HashSet<IPath>();
+        
+        //  Base names of the files of the context, see getBaseName()
+        private final Set<String> baseNames = new HashSet<String>();
+        
+        public CacheEntry(IFile file, TapestryContext context)
+        {
+            this.context = context;
+            
+            keys.add(file);
+            
+            add(file);
+            
+            for (TapestryFile tapestryFile : context.getFiles())
+            {
+                if (tapestryFile instanceof LocalFile)
+                {
+                    add(((LocalFile) tapestryFile).getFile());
+                    
+                    //  Contexts of assets may differ from the context they're imported by
+                    if (tapestryFile.isJavaFile() || tapestryFile.isTemplateFile() || tapestryFile.isPropertiesFile())
+                    {
+                        keys.add(((LocalFile) tapestryFile).getFile());
+                    }
+                }
+            }
+        }
+        
+        private void add(IFile file)
+        {
+            paths.add(file.getFullPath());
+            baseNames.add(getBaseName(file));
+        }
+    }
+    
+    private final Map<IFile, CacheEntry> entries = new LinkedHashMap<IFile, CacheEntry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IFile, CacheEntry> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+    
+    //  Incremented on every invalidation, so that contexts built concurrently with it are not cached
+    private long generation;
+    
+    public TapestryContext get(IFile file)
+    {
+        long generation;
+        
+        synchronized (this)
+        {
+            CacheEntry entry = entries.get(file);
+            
+            if (entry != null)
+            {
+                return entry.context;
+            }
+            
+            generation = this.generation;
+        }
+        
+        TapestryContext context = new LocalTapestryContext(file);
+        
+        synchronized (this)
+        {
+            if (generation == this.generation)
+            {
+                CacheEntry entry = new CacheEntry(file, context);
+                
+                for (IFile key : entry.keys)
+                {
+                    CacheEntry previous = entries.put(key, entry);
+                    
+                    if (previous != null && previous != entry)
+                    {
+                        //  Don't leave the other files of the replaced context pointing to it
+                        entries.values().removeAll(Collections.singleton(previous));
+                    }
+                }
+            }
+        }
+        
+        return context;
+    }
+    
+    /**
+     * Drops the contexts affected by the resource delta of the workspace.
+     */
+    public void resourceChanged(IResourceDelta workspaceDelta)
+    {
+        final Set<IPath> changedPaths = new HashSet<IPath>();
+        final Set<IPath> removedPaths = new HashSet<IPath>();
+        final Set<String> baseNames = new HashSet<String>();
+        
+        try
+        {
+            workspaceDelta.accept(new IResourceDeltaVisitor()
+            {
+                @Override
+                public boolean visit(IResourceDelta delta) throws CoreException
+                {
+                    if (delta.getResource().getType() != IResource.FILE)
+                    {
+                        return true;
+                    }
+                    
+                    IFile file = (IFile) delta.getResource();
+                    
+                    switch (delta.getKind())
+                    {
+                    case IResourceDelta.ADDED:
+                        
+                        baseNames.add(getBaseName(file));
+                        break;
+                    
+                    case IResourceDelta.REMOVED:
+                        
+                        removedPaths.add(file.getFullPath());
+                        baseNames.add(getBaseName(file));
+                        break;
+                    
+                    case IResourceDelta.CHANGED:
+                        
+                        //  @Imports are read from the Java file
+                        if ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0
+                                && TapestryUtils.isJavaFile(file.getProjectRelativePath()))
+                        {
+                            changedPaths.add(file.getFullPath());
+                        }
+                        break;
+                    }
+                    
+                    return false;
+                }
+            });
+        }
+        catch (CoreException e)
+        {
+            Activator.getDefault().logError("Error processing resource delta", e);
+            
+            clear();
+            
+            return;
+        }
+        
+        if (changedPaths.isEmpty() && removedPaths.isEmpty() && baseNames.isEmpty())
+        {
+            return;
+        }
+        
+        synchronized (this)
+        {
+            generation++;
+            
+            for (Iterator<CacheEntry> iterator = entries.values().iterator(); iterator.hasNext();)
+            {
+                CacheEntry entry = iterator.next();
+                
+                if (containsAny(entry.paths, changedPaths)
+                        || containsAny(entry.paths, removedPaths)
+                        || containsAny(entry.baseNames, baseNames))
+                {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+    private static <T> boolean containsAny(Set<T> set, Set<T> values)
+    {
+        for (T value : values)
+        {
+            if (set.contains(value))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return Lower-cased name of the file without extension, locale suffix and dashes,
+     *         so that <code>Index.java</code>, <code>Index_de.properties</code> and <code>index.js</code>
+     *         have the same base name.
+     */
+    private static String getBaseName(IFile file)
+    {
+        String name = file.getName();
+        
+        int index = name.indexOf('.');
+        
+        if (index >= 0)
+        {
+            name = name.substring(0, index);
+        }
+        
+        index = name.indexOf('_');
+        
+        if (index >= 0)
+        {
+            name = name.substring(0, index);
+        }
+        
+        return name.replace("-", "").toLowerCase();
+    }
+    
+    public synchronized void clear()
+    {
+        generation++;
+        
+        entries.clear();
+    }
+}
@@ -1,16 +1,20 @@
 package com.anjlab.eclipse.tapestry5;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.IAnnotation;
 import org.eclipse.jdt.core.IClassFile;
-import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IMemberValuePair;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeRoot;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
@@ -21,6 +25,9 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SimpleType;
 import org.eclipse.jdt.core.dom.StringLiteral;
 import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.util.ClassFormatException;
+
+import com.anjlab.eclipse.tapestry5.TapestryModuleIndex.ModuleEntry;
 
 public abstract class TapestryModule
 {
@@ -79,11 +86,123 @@ public abstract class TapestryModule
     
     public void initialize(IProgressMonitor monitor)
     {
+        checkCanceled(monitor);
+        
         monitor.subTask("Analyzing " + moduleClass.getFullyQualifiedName() + "...");
         
+        if (restoreFromIndex())
+        {
+            return;
+        }
+        
         findSubModules(monitor);
         
+        checkCanceled(monitor);
+        
         findLibraryMappings(monitor);
+        
+        storeToIndex();
+    }
+    
+    private static void checkCanceled(IProgressMonitor monitor)
+    {
+        if (monitor.isCanceled())
+        {
+            throw new OperationCanceledException();
+        }
+    }
+    
+    private synchronized boolean restoreFromIndex()
+    {
+        if (subModules != null || libraryMappings != null)
+        {
+            return false;
+        }
+        
+        ModuleEntry entry = project.getModuleIndex().getModule(moduleClass);
+        
+        if (entry == null)
+        {
+            return false;
+        }
+        
+        List<TapestryModule> subModules = new ArrayList<TapestryModule>();
+        
+        Map<String, IType> subModuleClasses =
+                project.getTypeResolver(getEclipseProject()).resolve(entry.getSubModuleClassNames());
+        
+        for (String className : entry.getSubModuleClassNames())
+        {
+            IType subModuleClass = subModuleClasses.get(className);
+            
+            if (subModuleClass == null)
+            {
+                //  Index is out of date
+                return false;
+            }
+            
+            subModules.add(createSubModule(subModuleClass));
+        }
+        
+        this.subModules = subModules;
+        this.libraryMappings = new ArrayList<LibraryMapping>(entry.getLibraryMappings());
+        this.sourceAvailable = entry.isSourceAvailable();
+        
+        return true;
+    }
+    
+    /**
+     * Takes analysis results from the module of the same class found in the previous snapshot
+     * of the module graph, so that unchanged modules don't have to be analyzed again.
+     * 
+     * @return <code>false</code> if results of the previous module can't be reused.
+     */
+    protected synchronized boolean restoreFrom(TapestryModule previous)
+    {
+        if (subModules != null || libraryMappings != null)
+        {
+            return false;
+        }
+        
+        if (!moduleClass.equals(previous.moduleClass)
+                || previous.subModules == null
+                || previous.libraryMappings == null)
+        {
+            return false;
+        }
+        
+        List<TapestryModule> subModules = new ArrayList<TapestryModule>();
+        
+        for (TapestryModule subModule : previous.subModules)
+        {
+            if (!subModule.getModuleClass().exists())
+            {
+                return false;
+            }
+            
+            subModules.add(createSubModule(subModule.getModuleClass()));
+        }
+        
+        this.subModules = subModules;
+        this.libraryMappings = previous.libraryMappings;
+        this.sourceAvailable = previous.sourceAvailable;
+        this.fingerprint = previous.fingerprint;
+        this.dependencies = previous.dependencies;
+        
+        return true;
+    }
+    
+    private synchronized void storeToIndex()
+    {
+        List<String> subModuleClassNames = new ArrayList<String>();
+        
+        for (TapestryModule subModule : subModules)
+        {
+            subModuleClassNames.add(subModule.getModuleClass().getFullyQualifiedName());
+        }
+        
+        project.getModuleIndex().putModule(moduleClass, fingerprint, dependencies, sourceAvailable,
+                subModuleClassNames, libraryMappings);
     }
     
     private List<TapestryModule> subModules;
@@ -107,6 +226,8 @@ public abstract class TapestryModule
         
         subModules = new ArrayList<TapestryModule>();
         
+        List<String> subModuleClassNames = new ArrayList<String>();
+        
         try
         {
             for (IAnnotation annotation : moduleClass.getAnnotations())
@@ -118,20 +239,7 @@ public abstract class TapestryModule
                         Object[] classes = (Object[]) pair.getValue();
                         for (Object className : classes)
                         {
-                            IType subModuleClass = EclipseUtils.findTypeDeclaration(
-                                    moduleClass.getJavaProject().getProject(), (String) className);
-                            
-                            if (subModuleClass != null)
-                            {
-                                subModules.add(createTapestryModule(project, subModuleClass, new ModuleReference()
-                                {
-                                    @Override
-                                    public String getLabel()
-                                    {
-                                        return "via @SubModule of " + getName();
-                                    }
-                                }));
-                            }
+                            subModuleClassNames.add((String) className);
                         }
                     }
                 }
@@ -141,9 +249,40 @@ public abstract class TapestryModule
         {
             Activator.getDefault().logError("Error getting submodules for " + getName(), e);
         }
+        
+        Map<String, IType> subModuleClasses =
+                project.getTypeResolver(getEclipseProject()).resolve(subModuleClassNames);
+        
+        for (String className : subModuleClassNames)
+        {
+            IType subModuleClass = subModuleClasses.get(className);
+            
+            if (subModuleClass != null)
+            {
+                subModules.add(createSubModule(subModuleClass));
+            }
+        }
+    }
+    
+    private TapestryModule createSubModule(IType subModuleClass)
+    {
+        return createTapestryModule(project, subModuleClass, new ModuleReference()
+        {
+            @Override
+            public String getLabel()
+            {
+                return "via @SubModule of " + getName();
+            }
+        });
     }
     
     private List<LibraryMapping> libraryMappings;
+    
+    //  Fingerprint of the analyzed module class, see TapestryModuleIndex.getFingerprint()
+    private String fingerprint;
+    
+    //  Handles of the compilation units and class files of the constants used in library mappings
+    private Set<String> dependencies = new LinkedHashSet<String>();
 
     public List<LibraryMapping> libraryMappings() throws JavaModelException
     {
@@ -162,6 +301,7 @@ public abstract class TapestryModule
         }
         
         libraryMappings = new ArrayList<LibraryMapping>();
+        dependencies = new LinkedHashSet<String>();
         
         IClassFile classFile = moduleClass.getClassFile();
         
@@ -179,9 +319,24 @@ public abstract class TapestryModule
         }
         
         this.sourceAvailable = source != null;
+        this.fingerprint = TapestryModuleIndex.getFingerprint(moduleClass, source);
         
         if (!sourceAvailable)
         {
+            if (classFile != null)
+            {
+                findLibraryMappingsInBytecode(classFile);
+            }
+            return;
+        }
+        
+        ModuleEntry entry = project.getModuleIndex().getModule(moduleClass, fingerprint);
+        
+        if (entry != null)
+        {
+            //  Source hasn't changed since the last analysis
+            libraryMappings.addAll(entry.getLibraryMappings());
+            dependencies.addAll(entry.getDependencies());
             return;
         }
         
@@ -213,10 +368,10 @@ public abstract class TapestryModule
                                 {
                                     if ("LibraryMapping".equals(((SimpleName) name).getIdentifier()))
                                     {
-                                        String prefix = evalExpression(project.getProject(), creation.arguments().get(0));
+                                        String prefix = evalExpression(creation.arguments().get(0));
                                         String pkg = "".equals(prefix)
                                                    ? TapestryUtils.getAppPackage(project.getProject())
-                                                   : evalExpression(project.getProject(), creation.arguments().get(1));
+                                                   : evalExpression(creation.arguments().get(1));
                                         
                                         libraryMappings.add(new LibraryMapping(prefix, pkg));
                                     }
@@ -228,7 +383,7 @@ public abstract class TapestryModule
                 return super.visit(node);
             }
 
-            private String evalExpression(IProject project, Object expr)
+            private String evalExpression(Object expr)
             {
                 if (expr instanceof StringLiteral)
                 {
@@ -237,19 +392,21 @@ public abstract class TapestryModule
                 
                 if (expr instanceof Name)
                 {
-                    IField field = EclipseUtils.findFieldDeclaration(project, ((Name) expr));
+                    List<ITypeRoot> typeRoots = new ArrayList<ITypeRoot>(1);
+                    
+                    String value = project.getConstantResolver().resolve(moduleClass, (Name) expr, typeRoots);
                     
-                    if (field != null)
+                    if (value != null)
                     {
-                        try
-                        {
-                            return (String) field.getConstant();
-                        }
-                        catch (JavaModelException e)
+                        for (ITypeRoot typeRoot : typeRoots)
                         {
-                            //  Ignore
+                            dependencies.add(typeRoot.getHandleIdentifier());
                         }
+                        return value;
                     }
+                    
+                    //  Constant may be declared later, so don't cache the results
+                    fingerprint = null;
                 }
                 
                 return "<" + expr.toString() + ">";
@@ -257,6 +414,24 @@ public abstract class TapestryModule
         });
     }
 
+    private void findLibraryMappingsInBytecode(IClassFile classFile)
+    {
+        try
+        {
+            for (LibraryMapping mapping : new LibraryMappingBytecodeScanner().findLibraryMappings(classFile))
+            {
+                //  Same as for the source code: default prefix is mapped to the application package
+                libraryMappings.add("".equals(mapping.getPathPrefix())
+                        ? new LibraryMapping("", TapestryUtils.getAppPackage(project.getProject()))
+                        : mapping);
+            }
+        }
+        catch (ClassFormatException e)
+        {
+            Activator.getDefault().logError("Error reading bytecode of " + moduleClass.getFullyQualifiedName(), e);
+        }
+    }
+    
     public abstract TapestryFile getModuleFile();
 
     public abstract boolean isReadOnly();
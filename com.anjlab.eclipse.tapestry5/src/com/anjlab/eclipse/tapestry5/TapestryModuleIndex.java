@@ -0,0 +1,626 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * On-disk index of the Tapestry module graph of a project.
+ * <p>
+ * Entries that come from archives are keyed by a fingerprint of the archive (path, size and timestamp),
+ * so after restart only the class path entries that actually changed have to be re-scanned.
+ * Manifests of source folders are never cached, because their content changes all the time,
+ * but analysis results of module classes from source folders are keyed by type handle and hash of the source,
+ * so that unchanged modules don't have to be parsed again.
+ * <p>
+ * Library mappings of a module may contain constants declared in other classes and the application package,
+ * so results of a module are only returned while the application package and the sources of these classes
+ * are the same as when the module was analyzed.
+ */
+public class TapestryModuleIndex
+{
+    private static final int VERSION = 5;
+    
+    private static final String INDEX_FOLDER = "module-index";
+    
+    public static class ModuleEntry
+    {
+        private final String fingerprint;
+        private final List<String> dependencies;
+        private final boolean sourceAvailable;
+        private final List<String> subModuleClassNames;
+        private final List<LibraryMapping> libraryMappings;
+        
+        public ModuleEntry(String fingerprint, List<String> dependencies, boolean sourceAvailable,
+                List<String> subModuleClassNames, List<LibraryMapping> libraryMappings)
+        {
+            this.fingerprint = fingerprint;
+            this.dependencies = dependencies;
+            this.sourceAvailable = sourceAvailable;
+            this.subModuleClassNames = subModuleClassNames;
+            this.libraryMappings = libraryMappings;
+        }
+        
+        /**
+         * @return Handles of the compilation units and class files that declare constants used by the module.
+         */
+        public List<String> getDependencies()
+        {
+            return dependencies;
+        }
+        
+        public boolean isSourceAvailable()
+        {
+            return sourceAvailable;
+        }
+        
+        public List<String> getSubModuleClassNames()
+        {
+            return subModuleClassNames;
+        }
+        
+        public List<LibraryMapping> getLibraryMappings()
+        {
+            return libraryMappings;
+        }
+    }
+    
+    private static class RootEntry
+    {
+        private final String fingerprint;
+        private final List<String> moduleClassNames;
+        
+        public RootEntry(String fingerprint, List<String> moduleClassNames)
+        {
+            this.fingerprint = fingerprint;
+            this.moduleClassNames = moduleClassNames;
+        }
+    }
+    
+    private final IProject project;
+    
+    private final File file;
+    
+    private final Map<String, RootEntry> roots = new HashMap<String, RootEntry>();
+    
+    //  Keyed by 'project/fully.qualified.Name', the same name may resolve differently on class paths of other projects
+    private final Map<String, String> typeHandles = new HashMap<String, String>();
+    
+    private final Map<String, ModuleEntry> modules = new HashMap<String, ModuleEntry>();
+    
+    private boolean dirty;
+    
+    private TapestryModuleIndex(IProject project, File file)
+    {
+        this.project = project;
+        this.file = file;
+    }
+    
+    public static TapestryModuleIndex load(IProject project)
+    {
+        TapestryModuleIndex index = new TapestryModuleIndex(project, getIndexFile(project));
+        
+        if (index.file != null && index.file.isFile())
+        {
+            try
+            {
+                index.read();
+            }
+            catch (IOException e)
+            {
+                Activator.getDefault().logWarning("Error reading module index for " + project.getName(), e);
+                
+                index.clear();
+            }
+        }
+        
+        return index;
+    }
+    
+    private static File getIndexFile(IProject project)
+    {
+        try
+        {
+            File folder = Activator.getDefault().getStateLocation().append(INDEX_FOLDER).toFile();
+            
+            return new File(folder, project.getName() + ".idx");
+        }
+        catch (IllegalStateException e)
+        {
+            //  No state location available, i.e. the workspace is read-only
+            return null;
+        }
+    }
+    
+    /**
+     * @return Fingerprint of the archive behind the given root,
+     *         or <code>null</code> if content of the root can't be cached.
+     */
+    public static String getFingerprint(IPackageFragmentRoot root)
+    {
+        if (!root.isArchive())
+        {
+            return null;
+        }
+        
+        File archive = EclipseUtils.getArchiveFile(root);
+        
+        if (archive == null || !archive.isFile())
+        {
+            return null;
+        }
+        
+        return root.getPath().toPortableString() + '|' + archive.length() + '|' + archive.lastModified();
+    }
+    
+    /**
+     * @return Fingerprint of the module class: fingerprint of its archive, or, for classes from source folders,
+     *         type handle plus hash of the given source. <code>null</code> if analysis results can't be cached.
+     */
+    public static String getFingerprint(IType moduleClass, String source)
+    {
+        String fingerprint = getFingerprint(moduleClass);
+        
+        if (fingerprint != null || source == null)
+        {
+            return fingerprint;
+        }
+        
+        return moduleClass.getHandleIdentifier() + '|' + getHash(source);
+    }
+    
+    private static String getHash(String source)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            
+            StringBuilder hash = new StringBuilder();
+            
+            for (byte b : digest.digest(source.getBytes("UTF-8")))
+            {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+            
+            return hash.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String getKey(IPackageFragmentRoot root)
+    {
+        return root.getPath().toPortableString();
+    }
+    
+    /**
+     * @return Names of the module classes declared in the manifest of the given root,
+     *         or <code>null</code> if the root wasn't indexed or has changed since.
+     */
+    public synchronized List<String> getModuleClassNames(IPackageFragmentRoot root)
+    {
+        RootEntry entry = roots.get(getKey(root));
+        
+        if (entry == null)
+        {
+            return null;
+        }
+        
+        String fingerprint = getFingerprint(root);
+        
+        return fingerprint != null && fingerprint.equals(entry.fingerprint)
+             ? entry.moduleClassNames
+             : null;
+    }
+    
+    public synchronized void putModuleClassNames(IPackageFragmentRoot root, List<String> moduleClassNames)
+    {
+        String fingerprint = getFingerprint(root);
+        
+        if (fingerprint == null)
+        {
+            return;
+        }
+        
+        roots.put(getKey(root), new RootEntry(fingerprint, new ArrayList<String>(moduleClassNames)));
+        
+        dirty = true;
+    }
+    
+    /**
+     * Removes all root entries except the given ones, so that jars removed from the class path
+     * don't stay in the index forever.
+     */
+    public synchronized void retainRoots(Collection<IPackageFragmentRoot> classpath)
+    {
+        List<String> keys = new ArrayList<String>();
+        
+        for (IPackageFragmentRoot root : classpath)
+        {
+            keys.add(getKey(root));
+        }
+        
+        if (roots.keySet().retainAll(keys))
+        {
+            dirty = true;
+        }
+    }
+    
+    /**
+     * @return Handle of the type the class name was resolved to on the class path of the project,
+     *         or <code>null</code> if it wasn't resolved yet.
+     */
+    public synchronized String getTypeHandle(IJavaProject javaProject, String className)
+    {
+        return typeHandles.get(getTypeKey(javaProject, className));
+    }
+    
+    public synchronized void putTypeHandle(IJavaProject javaProject, String className, IType type)
+    {
+        String handle = type.getHandleIdentifier();
+        
+        if (!handle.equals(typeHandles.put(getTypeKey(javaProject, className), handle)))
+        {
+            dirty = true;
+        }
+    }
+    
+    public synchronized void removeTypeHandle(IJavaProject javaProject, String className)
+    {
+        if (typeHandles.remove(getTypeKey(javaProject, className)) != null)
+        {
+            dirty = true;
+        }
+    }
+    
+    private static String getTypeKey(IJavaProject javaProject, String className)
+    {
+        return javaProject.getElementName() + "/" + className;
+    }
+    
+    /**
+     * @return Cached analysis results for the module class, or <code>null</code>
+     *         if the module wasn't indexed, comes from a source folder or its archive has changed since.
+     */
+    public ModuleEntry getModule(IType moduleClass)
+    {
+        return getModule(moduleClass, getFingerprint(moduleClass));
+    }
+    
+    /**
+     * @return Cached analysis results for the module class, or <code>null</code>
+     *         if there are no results for the given fingerprint, or the application package
+     *         or classes the results depend on have changed since.
+     * 
+     * @see #getFingerprint(IType, String)
+     */
+    public synchronized ModuleEntry getModule(IType moduleClass, String fingerprint)
+    {
+        ModuleEntry entry = modules.get(moduleClass.getFullyQualifiedName());
+        
+        if (entry == null || fingerprint == null)
+        {
+            return null;
+        }
+        
+        return entry.fingerprint.equals(getFingerprint(fingerprint, entry.dependencies))
+             ? entry
+             : null;
+    }
+    
+    /**
+     * @param dependencies Handles of the compilation units and class files that declare constants
+     *                     used by the module.
+     */
+    public synchronized void putModule(IType moduleClass, String fingerprint, Collection<String> dependencies,
+            boolean sourceAvailable, List<String> subModuleClassNames, List<LibraryMapping> libraryMappings)
+    {
+        if (fingerprint == null)
+        {
+            return;
+        }
+        
+        List<String> handles = new ArrayList<String>(dependencies);
+        
+        fingerprint = getFingerprint(fingerprint, handles);
+        
+        if (fingerprint == null)
+        {
+            return;
+        }
+        
+        modules.put(moduleClass.getFullyQualifiedName(),
+                new ModuleEntry(fingerprint, handles, sourceAvailable,
+                        new ArrayList<String>(subModuleClassNames),
+                        new ArrayList<LibraryMapping>(libraryMappings)));
+        
+        dirty = true;
+    }
+    
+    public synchronized void removeModule(String className)
+    {
+        if (modules.remove(className) != null)
+        {
+            dirty = true;
+        }
+    }
+    
+    private static String getFingerprint(IType type)
+    {
+        IPackageFragmentRoot root = (IPackageFragmentRoot) type.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        
+        return root != null ? getFingerprint(root) : null;
+    }
+    
+    /**
+     * @return Fingerprint of the module class combined with the application package and fingerprints
+     *         of the dependencies, or <code>null</code> if some of the dependencies can't be fingerprinted.
+     */
+    private String getFingerprint(String fingerprint, List<String> dependencies)
+    {
+        StringBuilder builder = new StringBuilder(fingerprint)
+                .append('|').append(TapestryUtils.getAppPackage(project));
+        
+        for (String handle : dependencies)
+        {
+            String dependencyFingerprint = getDependencyFingerprint(handle);
+            
+            if (dependencyFingerprint == null)
+            {
+                return null;
+            }
+            
+            builder.append('|').append(dependencyFingerprint);
+        }
+        
+        return builder.toString();
+    }
+    
+    private static String getDependencyFingerprint(String handle)
+    {
+        IJavaElement element = JavaCore.create(handle);
+        
+        if (element == null || !element.exists())
+        {
+            return null;
+        }
+        
+        IPackageFragmentRoot root = (IPackageFragmentRoot) element.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        
+        String fingerprint = root != null ? getFingerprint(root) : null;
+        
+        if (fingerprint != null)
+        {
+            return fingerprint;
+        }
+        
+        try
+        {
+            String source = ((ITypeRoot) element).getSource();
+            
+            return source != null ? handle + '|' + getHash(source) : null;
+        }
+        catch (JavaModelException e)
+        {
+            return null;
+        }
+    }
+    
+    private void clear()
+    {
+        roots.clear();
+        typeHandles.clear();
+        modules.clear();
+    }
+    
+    private void read() throws IOException
+    {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        
+        try
+        {
+            if (input.readInt() != VERSION)
+            {
+                return;
+            }
+            
+            int rootCount = input.readInt();
+            for (int i = 0; i < rootCount; i++)
+            {
+                String key = input.readUTF();
+                String fingerprint = input.readUTF();
+                roots.put(key, new RootEntry(fingerprint, readStrings(input)));
+            }
+            
+            int typeCount = input.readInt();
+            for (int i = 0; i < typeCount; i++)
+            {
+                typeHandles.put(input.readUTF(), input.readUTF());
+            }
+            
+            int moduleCount = input.readInt();
+            for (int i = 0; i < moduleCount; i++)
+            {
+                String className = input.readUTF();
+                String fingerprint = input.readUTF();
+                List<String> dependencies = readStrings(input);
+                boolean sourceAvailable = input.readBoolean();
+                List<String> subModuleClassNames = readStrings(input);
+                
+                int mappingCount = input.readInt();
+                List<LibraryMapping> libraryMappings = new ArrayList<LibraryMapping>(mappingCount);
+                for (int j = 0; j < mappingCount; j++)
+                {
+                    libraryMappings.add(new LibraryMapping(readNullableString(input), readNullableString(input)));
+                }
+                
+                modules.put(className, new ModuleEntry(fingerprint, dependencies, sourceAvailable,
+                        subModuleClassNames, libraryMappings));
+            }
+        }
+        finally
+        {
+            try { input.close(); } catch (IOException e) { }
+        }
+    }
+    
+    public synchronized void save()
+    {
+        if (!dirty || file == null)
+        {
+            return;
+        }
+        
+        File folder = file.getParentFile();
+        
+        if (!folder.isDirectory() && !folder.mkdirs())
+        {
+            Activator.getDefault().logWarning("Unable to create folder " + folder);
+            return;
+        }
+        
+        File tempFile = new File(folder, file.getName() + ".tmp");
+        
+        try
+        {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            
+            try
+            {
+                write(output);
+            }
+            finally
+            {
+                output.close();
+            }
+            
+            //  Replace the index in one step, so that readers never see partially written file
+            if (file.exists() && !file.delete())
+            {
+                throw new IOException("Unable to delete " + file);
+            }
+            
+            if (!tempFile.renameTo(file))
+            {
+                throw new IOException("Unable to rename " + tempFile + " to " + file);
+            }
+            
+            dirty = false;
+        }
+        catch (IOException e)
+        {
+            Activator.getDefault().logWarning("Error writing module index " + file, e);
+            
+            tempFile.delete();
+        }
+    }
+    
+    private void write(DataOutputStream output) throws IOException
+    {
+        output.writeInt(VERSION);
+        
+        output.writeInt(roots.size());
+        for (Map.Entry<String, RootEntry> entry : roots.entrySet())
+        {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue().fingerprint);
+            writeStrings(output, entry.getValue().moduleClassNames);
+        }
+        
+        output.writeInt(typeHandles.size());
+        for (Map.Entry<String, String> entry : typeHandles.entrySet())
+        {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        
+        output.writeInt(modules.size());
+        for (Map.Entry<String, ModuleEntry> entry : modules.entrySet())
+        {
+            ModuleEntry module = entry.getValue();
+            
+            output.writeUTF(entry.getKey());
+            output.writeUTF(module.fingerprint);
+            writeStrings(output, module.dependencies);
+            output.writeBoolean(module.sourceAvailable);
+            writeStrings(output, module.subModuleClassNames);
+            
+            output.writeInt(module.libraryMappings.size());
+            for (LibraryMapping mapping : module.libraryMappings)
+            {
+                writeNullableString(output, mapping.getPathPrefix());
+                writeNullableString(output, mapping.getRootPackage());
+            }
+        }
+    }
+    
+    private static List<String> readStrings(DataInputStream input) throws IOException
+    {
+        int count = input.readInt();
+        
+        if (count == 0)
+        {
+            return Collections.emptyList();
+        }
+        
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            strings.add(input.readUTF());
+        }
+        return strings;
+    }
+    
+    private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException
+    {
+        output.writeInt(strings.size());
+        for (String string : strings)
+        {
+            output.writeUTF(string);
+        }
+    }
+    
+    private static String readNullableString(DataInputStream input) throws IOException
+    {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+    
+    private static void writeNullableString(DataOutputStream output, String string) throws IOException
+    {
+        output.writeBoolean(string != null);
+        if (string != null)
+        {
+            output.writeUTF(string);
+        }
+    }
+}
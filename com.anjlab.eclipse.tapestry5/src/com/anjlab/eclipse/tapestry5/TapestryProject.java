@@ -1,34 +1,91 @@
 package com.anjlab.eclipse.tapestry5;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.jar.Manifest;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.jdt.core.IJarEntryResource;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 
+import com.anjlab.eclipse.tapestry5.ComponentIndex.Kind;
 import com.anjlab.eclipse.tapestry5.TapestryModule.ModuleReference;
 import com.anjlab.eclipse.tapestry5.watchdog.WebXmlWatchdog.WebXml;
 
 public class TapestryProject
 {
+    private static final String TAPESTRY_CORE_MODULE = "org.apache.tapestry5.services.TapestryModule";
+    private static final String TAPESTRY_FILTER = "org.apache.tapestry5.TapestryFilter";
+    
+    private static final String WEB_XML_PATH = "WEB-INF/web.xml";
+    
+    private static final String META_INF = "META-INF";
+    private static final String MANIFEST_MF = "MANIFEST.MF";
+    
     private IProject project;
     
+    /**
+     * Immutable snapshot of the module graph, replaced as a whole when the graph changes
+     */
     private volatile List<TapestryModule> modules;
     
+    private TapestryModuleIndex moduleIndex;
+    
+    private final Map<IProject, TypeResolver> typeResolvers = new HashMap<IProject, TypeResolver>();
+    
+    private volatile ConstantResolver constantResolver;
+    
+    private volatile ComponentIndex componentIndex;
+    
+    private final SourceFolderIndex sourceFolderIndex = new SourceFolderIndex();
+    
+    private final ComponentUsageIndex usageIndex;
+    
+    private final MessageCatalogIndex messageCatalogIndex;
+    
+    //  Class path roots and module class names from their manifests, as of the last build of the graph
+    private List<IPackageFragmentRoot> roots;
+    private List<List<String>> rootModuleClassNames;
+    
+    //  Modules of the previous snapshot that may be reused while building the new one
+    private Map<String, TapestryModule> previousModules = Collections.emptyMap();
+    
+    private final PendingChanges pendingChanges = new PendingChanges();
+    
+    //  Whether filter classes from web.xml are TapestryFilter or its subclasses, by class name
+    private final Map<String, Boolean> tapestryFilterClasses = new ConcurrentHashMap<String, Boolean>();
+    
+    //  Catalogs of Tapestry filters from web.xml, resolved by the analysis jobs so that editors only read them
+    private volatile List<String> filterCatalogs = Collections.emptyList();
+    private volatile boolean filterCatalogsChanged;
+    
     public TapestryProject(IProject project)
     {
         this.project = project;
+        this.usageIndex = new ComponentUsageIndex(project);
+        this.messageCatalogIndex = new MessageCatalogIndex(project);
     }
     
     public IProject getProject()
@@ -46,9 +103,67 @@ public class TapestryProject
         return modules;
     }
 
+    public boolean isInitialized()
+    {
+        return modules != null;
+    }
+    
     public void initialize(IProgressMonitor monitor)
     {
         findModules(monitor);
+        
+        buildComponentIndex(monitor);
+        
+        buildUsageIndex(monitor);
+        
+        buildMessageCatalogIndex(monitor);
+        
+        buildFilterCatalogs();
+    }
+    
+    private synchronized void buildUsageIndex(IProgressMonitor monitor)
+    {
+        if (usageIndex.isBuilt())
+        {
+            //  Index is kept up to date by processResourceDelta()
+            return;
+        }
+        
+        monitor.subTask("Indexing component usages...");
+        
+        usageIndex.build(monitor);
+    }
+    
+    private synchronized void buildMessageCatalogIndex(IProgressMonitor monitor)
+    {
+        if (messageCatalogIndex.isBuilt())
+        {
+            //  Index is kept up to date by processResourceDelta()
+            return;
+        }
+        
+        monitor.subTask("Indexing messages...");
+        
+        messageCatalogIndex.build(monitor);
+    }
+    
+    private synchronized void buildComponentIndex(IProgressMonitor monitor)
+    {
+        if (componentIndex != null && componentIndex.hasSameRoots(modules))
+        {
+            //  Index is kept up to date by processDelta()
+            return;
+        }
+        
+        monitor.subTask("Indexing components...");
+        
+        ComponentIndex componentIndex = ComponentIndex.create(modules);
+        
+        componentIndex.build(monitor);
+        
+        this.componentIndex = componentIndex;
+        
+        usageIndex.setComponentIndex(componentIndex);
     }
 
     private synchronized void findModules(IProgressMonitor monitor)
@@ -58,8 +173,363 @@ public class TapestryProject
             return;
         }
         
-        modules = new ArrayList<TapestryModule>();
+        buildModules(monitor);
+    }
+    
+    private void buildModules(IProgressMonitor monitor)
+    {
+        List<TapestryModule> modules = new ArrayList<TapestryModule>();
+        
+        boolean canceled = false;
+        
+        try
+        {
+            findModules(monitor, modules);
+        }
+        catch (OperationCanceledException e)
+        {
+            canceled = true;
+            
+            throw e;
+        }
+        finally
+        {
+            previousModules = Collections.emptyMap();
+            
+            getModuleIndex().save();
+            
+            //  Never publish partially built graph
+            if (!canceled)
+            {
+                this.modules = Collections.unmodifiableList(modules);
+            }
+        }
+    }
+    
+    /**
+     * Records changes of the given Java element delta that affect the module graph.
+     * Only does a quick walk over the delta, the graph itself is updated by {@link #refresh(IProgressMonitor)}.
+     * 
+     * @return <code>true</code> if the module graph has to be refreshed.
+     */
+    public boolean processDelta(IJavaElementDelta delta)
+    {
+        List<TapestryModule> modules = this.modules;
+        
+        if (modules == null)
+        {
+            //  Graph wasn't built yet, so it will see all the changes anyway
+            return false;
+        }
+        
+        processDelta(delta, modules);
+        
+        return pendingChanges.hasChanges();
+    }
+    
+    private void processDelta(IJavaElementDelta delta, List<TapestryModule> modules)
+    {
+        IJavaElement element = delta.getElement();
+        
+        int flags = delta.getFlags();
+        
+        switch (element.getElementType())
+        {
+        case IJavaElement.JAVA_PROJECT:
+            
+            if (!isAffectedBy(element.getJavaProject().getProject(), modules))
+            {
+                return;
+            }
+            
+            if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED
+                        | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0)
+            {
+                pendingChanges.classpathChanged();
+            }
+            break;
+        
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            
+            if ((flags & (IJavaElementDelta.F_ADDED_TO_CLASSPATH
+                        | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0)
+            {
+                pendingChanges.classpathChanged();
+            }
+            else if ((flags & IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED) != 0)
+            {
+                pendingChanges.manifestsChanged();
+                
+                for (TapestryModule module : modules)
+                {
+                    if (element.equals(module.getModuleClass().getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT)))
+                    {
+                        pendingChanges.moduleChanged(module.getModuleClass().getFullyQualifiedName());
+                    }
+                }
+            }
+            else if (isManifestChanged(delta))
+            {
+                pendingChanges.manifestsChanged();
+            }
+            break;
+        
+        case IJavaElement.PACKAGE_FRAGMENT:
+            
+            //  Deltas of packages that were added, removed or moved don't always list their classes
+            updateComponentIndex(delta);
+            
+            if (delta.getKind() == IJavaElementDelta.ADDED)
+            {
+                pendingChanges.typesAdded();
+            }
+            break;
+        
+        case IJavaElement.COMPILATION_UNIT:
+            
+            updateComponentIndex(delta);
+            
+            if (delta.getKind() == IJavaElementDelta.ADDED)
+            {
+                pendingChanges.typesAdded();
+            }
+            else if (delta.getKind() == IJavaElementDelta.REMOVED
+                    || (flags & (IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE)) != 0)
+            {
+                //  Don't wait for the lock of this project here, refresh may be running
+                ConstantResolver resolver = constantResolver;
+                
+                boolean constantsChanged = resolver != null && resolver.invalidate((ICompilationUnit) element);
+                
+                for (TapestryModule module : modules)
+                {
+                    //  Library mappings of modules with sources may refer to constants of the changed type
+                    if (element.equals(module.getModuleClass().getCompilationUnit())
+                            || (constantsChanged && module.isSourceAvailable()))
+                    {
+                        pendingChanges.moduleChanged(module.getModuleClass().getFullyQualifiedName());
+                    }
+                }
+            }
+            //  Nothing interesting below compilation units
+            return;
+        }
+        
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+        {
+            processDelta(child, modules);
+        }
+    }
+    
+    private void updateComponentIndex(IJavaElementDelta delta)
+    {
+        ComponentIndex componentIndex = this.componentIndex;
+        
+        if (componentIndex == null)
+        {
+            return;
+        }
+        
+        boolean componentsChanged = false;
+        
+        if (delta.getKind() == IJavaElementDelta.ADDED)
+        {
+            componentsChanged = componentIndex.add(delta.getElement());
+        }
+        else if (delta.getKind() == IJavaElementDelta.REMOVED)
+        {
+            componentsChanged = componentIndex.remove(delta.getElement());
+        }
+        
+        if (componentsChanged)
+        {
+            //  Names of the usages may resolve to other classes now
+            usageIndex.setComponentIndex(componentIndex);
+        }
+    }
+    
+    /**
+     * Applies resource delta of the workspace to the caches of this project.
+     * 
+     * @return <code>true</code> if the usages of components or message catalogs have to be updated
+     *         by {@link #updateIndexes(IProgressMonitor)}.
+     */
+    public boolean processResourceDelta(IResourceDelta delta)
+    {
+        sourceFolderIndex.resourceChanged(delta);
+        
+        boolean usagesChanged = usageIndex.resourceChanged(delta);
+        boolean messagesChanged = messageCatalogIndex.resourceChanged(delta);
+        
+        for (IContainer webapp : ProjectTopology.get(project).getWebapps())
+        {
+            if (delta.findMember(webapp.getFullPath().append(WEB_XML_PATH)) != null)
+            {
+                filterCatalogsChanged = true;
+                
+                messagesChanged = true;
+            }
+        }
+        
+        return usagesChanged || messagesChanged;
+    }
+    
+    public SourceFolderIndex getSourceFolderIndex()
+    {
+        return sourceFolderIndex;
+    }
+    
+    private boolean isAffectedBy(IProject changedProject, List<TapestryModule> modules)
+    {
+        if (project.equals(changedProject))
+        {
+            return true;
+        }
+        
+        for (TapestryModule module : modules)
+        {
+            if (changedProject.equals(module.getEclipseProject()))
+            {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private boolean isManifestChanged(IJavaElementDelta rootDelta)
+    {
+        IResourceDelta[] resourceDeltas = rootDelta.getResourceDeltas();
+        
+        if (resourceDeltas != null)
+        {
+            for (IResourceDelta resourceDelta : resourceDeltas)
+            {
+                //  Non-Java resources are reported relative to the root, i.e. META-INF folder
+                if (META_INF.equals(resourceDelta.getResource().getName())
+                        && resourceDelta.findMember(new Path(MANIFEST_MF)) != null)
+                {
+                    return true;
+                }
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Applies changes of templates, Java files and properties files recorded by {@link #processResourceDelta(IResourceDelta)}
+     * to the usages of components and message catalogs. The module graph is not affected.
+     * 
+     * @return <code>true</code> if usages of components or message catalogs have changed.
+     */
+    public boolean updateIndexes(IProgressMonitor monitor)
+    {
+        boolean usagesChanged = usageIndex.update(monitor);
+        boolean messagesChanged = messageCatalogIndex.update(monitor);
+        
+        if (filterCatalogsChanged)
+        {
+            filterCatalogsChanged = false;
+            
+            messagesChanged |= buildFilterCatalogs();
+        }
+        
+        return usagesChanged || messagesChanged;
+    }
+    
+    /**
+     * Applies changes recorded by {@link #processDelta(IJavaElementDelta)} and publishes new snapshot of the module graph.
+     * Only modules whose classes have changed are analyzed again, and manifests of the class path roots
+     * are only read again if the class path or one of the manifests has changed.
+     * 
+     * @return <code>true</code> if new snapshot was published.
+     */
+    public synchronized boolean refresh(IProgressMonitor monitor)
+    {
+        PendingChanges changes = pendingChanges.drain();
+        
+        if (modules == null || !changes.hasChanges())
+        {
+            return false;
+        }
+        
+        if (changes.classpathChanged)
+        {
+            typeResolvers.clear();
+            
+            constantResolver = null;
+        }
+        else
+        {
+            for (TypeResolver resolver : typeResolvers.values())
+            {
+                resolver.forget(changes.changedModuleClassNames);
+                
+                if (changes.typesAdded)
+                {
+                    resolver.forgetMisses();
+                }
+            }
+            
+            if (changes.typesAdded)
+            {
+                getConstantResolver().forgetMisses();
+            }
+        }
+        
+        for (String className : changes.changedModuleClassNames)
+        {
+            //  Cached results may depend on something other than the source of the module, i.e. on constants
+            getModuleIndex().removeModule(className);
+        }
+        
+        if (changes.classpathChanged || changes.manifestsChanged)
+        {
+            roots = null;
+            rootModuleClassNames = null;
+            
+            //  Content of archives may have changed
+            componentIndex = null;
+            
+            usageIndex.setComponentIndex(null);
+            
+            tapestryFilterClasses.clear();
+            
+            buildFilterCatalogs();
+        }
+        
+        previousModules = new HashMap<String, TapestryModule>();
         
+        for (TapestryModule module : modules)
+        {
+            String className = module.getModuleClass().getFullyQualifiedName();
+            
+            if (!changes.changedModuleClassNames.contains(className))
+            {
+                previousModules.put(className, module);
+            }
+        }
+        
+        try
+        {
+            buildModules(monitor);
+            
+            buildComponentIndex(monitor);
+        }
+        catch (OperationCanceledException e)
+        {
+            //  Keep the changes for the next refresh
+            pendingChanges.merge(changes);
+            
+            throw e;
+        }
+        
+        return true;
+    }
+    
+    private void findModules(IProgressMonitor monitor, List<TapestryModule> modules)
+    {
         String appPackage = TapestryUtils.getAppPackage(project);
         
         if (appPackage == null)
@@ -67,8 +537,6 @@ public class TapestryProject
             return;
         }
         
-        TapestryModule appModule = null;
-        
         final WebXml webXml = Activator.getDefault().getWebXml(project);
         
         if (webXml == null)
@@ -76,11 +544,56 @@ public class TapestryProject
             return;
         }
         
+        if (roots == null)
+        {
+            List<IPackageFragmentRoot> roots = Collections.emptyList();
+            
+            try
+            {
+                roots = Arrays.asList(JavaCore.create(project).getAllPackageFragmentRoots());
+            }
+            catch (CoreException e)
+            {
+                Activator.getDefault().logError("Error searching tapestry modules", e);
+            }
+            
+            //  Manifests are read concurrently, but modules are added in class path order
+            this.rootModuleClassNames =
+                    new ModuleManifestScanner(getModuleIndex()).readModuleClassNames(monitor, roots);
+            this.roots = roots;
+            
+            getModuleIndex().retainRoots(roots);
+        }
+        
+        List<List<String>> moduleClassNames = rootModuleClassNames;
+        
+        //  Resolve all candidate module classes at once, so that addModule() only hits the resolver's cache
+        
+        List<String> candidateClassNames = new ArrayList<String>();
+        
+        for (String filterName : webXml.getFilterNames())
+        {
+            candidateClassNames.add(getAppModuleClassName(appPackage, filterName));
+        }
+        
+        candidateClassNames.add(TAPESTRY_CORE_MODULE);
+        
+        for (List<String> classNames : moduleClassNames)
+        {
+            candidateClassNames.addAll(classNames);
+        }
+        
+        monitor.subTask("Locating module classes...");
+        
+        getTypeResolver(project).resolve(candidateClassNames);
+        
+        TapestryModule appModule = null;
+        
         for (String filterName : webXml.getFilterNames())
         {
             final String localFilterName = filterName;
             
-            appModule = addModule(monitor, modules, project, appPackage + ".services." + filterName + "Module", new ModuleReference()
+            appModule = addModule(monitor, modules, project, getAppModuleClassName(appPackage, filterName), new ModuleReference()
             {
                 @Override
                 public String getLabel()
@@ -96,7 +609,7 @@ public class TapestryProject
             }
         }
         
-        addModule(monitor, modules, project, "org.apache.tapestry5.services.TapestryModule", new ModuleReference()
+        addModule(monitor, modules, project, TAPESTRY_CORE_MODULE, new ModuleReference()
         {
             @Override
             public String getLabel()
@@ -105,70 +618,88 @@ public class TapestryProject
             }
         });
         
-        try
+        for (int i = 0; i < roots.size(); i++)
         {
-            for (IPackageFragmentRoot root : JavaCore.create(project).getAllPackageFragmentRoots())
-            {
-                findModules(monitor, modules, root);
-            }
+            addModules(monitor, modules, roots.get(i), moduleClassNames.get(i));
         }
-        catch (CoreException e)
+    }
+    
+    private static class PendingChanges
+    {
+        private boolean classpathChanged;
+        private boolean manifestsChanged;
+        private boolean typesAdded;
+        private Set<String> changedModuleClassNames = new HashSet<String>();
+        
+        public synchronized void classpathChanged()
+        {
+            classpathChanged = true;
+        }
+        
+        public synchronized void manifestsChanged()
+        {
+            manifestsChanged = true;
+        }
+        
+        public synchronized void typesAdded()
         {
-            Activator.getDefault().logError("Error searching tapestry modules", e);
+            typesAdded = true;
+        }
+        
+        public synchronized void moduleChanged(String className)
+        {
+            changedModuleClassNames.add(className);
+        }
+        
+        public synchronized boolean hasChanges()
+        {
+            return classpathChanged || manifestsChanged || typesAdded || !changedModuleClassNames.isEmpty();
+        }
+        
+        public synchronized void merge(PendingChanges changes)
+        {
+            classpathChanged |= changes.classpathChanged;
+            manifestsChanged |= changes.manifestsChanged;
+            typesAdded |= changes.typesAdded;
+            changedModuleClassNames.addAll(changes.changedModuleClassNames);
+        }
+        
+        public synchronized PendingChanges drain()
+        {
+            PendingChanges changes = new PendingChanges();
+            
+            changes.classpathChanged = classpathChanged;
+            changes.manifestsChanged = manifestsChanged;
+            changes.typesAdded = typesAdded;
+            changes.changedModuleClassNames = changedModuleClassNames;
+            
+            classpathChanged = false;
+            manifestsChanged = false;
+            typesAdded = false;
+            changedModuleClassNames = new HashSet<String>();
+            
+            return changes;
         }
     }
+    
+    private String getAppModuleClassName(String appPackage, String filterName)
+    {
+        return appPackage + ".services." + filterName + "Module";
+    }
 
-    private void findModules(IProgressMonitor monitor, List<TapestryModule> modules, final IPackageFragmentRoot root)
-            throws CoreException
+    private void addModules(IProgressMonitor monitor, List<TapestryModule> modules,
+            final IPackageFragmentRoot root, List<String> moduleClassNames)
     {
-        monitor.subTask("Reading " + root.getElementName() + "...");
-        
-        for (Object obj : root.getNonJavaResources())
+        for (String className : moduleClassNames)
         {
-            if (obj instanceof IJarEntryResource)
+            addModule(monitor, modules, project, className, new ModuleReference()
             {
-                IJarEntryResource jarEntry = (IJarEntryResource) obj;
-                
-                if ("META-INF".equals(jarEntry.getName()))
+                @Override
+                public String getLabel()
                 {
-                    for (IJarEntryResource child : jarEntry.getChildren())
-                    {
-                        if ("MANIFEST.MF".equals(child.getName()))
-                        {
-                            InputStream contents = child.getContents();
-                            
-                            try
-                            {
-                                Manifest manifest = new Manifest(contents);
-                                
-                                String classes = manifest.getMainAttributes().getValue("Tapestry-Module-Classes");
-                                
-                                if (classes != null)
-                                {
-                                    for (String className : classes.split(","))
-                                    {
-                                        addModule(monitor, modules, project, className, new ModuleReference()
-                                        {
-                                            @Override
-                                            public String getLabel()
-                                            {
-                                                return "via " + root.getElementName() + "/META-INF/MANIFEST.MF";
-                                            }
-                                        });
-                                    }
-                                }
-                            }
-                            catch (IOException e)
-                            {
-                                if (contents != null)
-                                {
-                                    try { contents.close(); } catch (IOException t)  { }
-                                }
-                            }
-                        }
-                    }
+                    return "via " + root.getElementName() + "/META-INF/MANIFEST.MF";
                 }
-            }
+            });
         }
     }
 
@@ -176,7 +707,7 @@ public class TapestryProject
     {
         monitor.subTask("Locating " + moduleClassName + "...");
         
-        IType moduleClass = EclipseUtils.findTypeDeclaration(project, moduleClassName);
+        IType moduleClass = getTypeResolver(project).resolve(moduleClassName);
         
         if (moduleClass == null)
         {
@@ -192,7 +723,17 @@ public class TapestryProject
 
     private void addModule(IProgressMonitor monitor, List<TapestryModule> modules, TapestryModule module)
     {
-        module.initialize(monitor);
+        if (monitor.isCanceled())
+        {
+            throw new OperationCanceledException();
+        }
+        
+        TapestryModule previous = previousModules.get(module.getModuleClass().getFullyQualifiedName());
+        
+        if (previous == null || !module.restoreFrom(previous))
+        {
+            module.initialize(monitor);
+        }
         
         modules.add(module);
         
@@ -201,6 +742,38 @@ public class TapestryProject
             addModule(monitor, modules, subModule);
         }
     }
+    
+    protected synchronized TypeResolver getTypeResolver(IProject searchProject)
+    {
+        TypeResolver resolver = typeResolvers.get(searchProject);
+        
+        if (resolver == null)
+        {
+            resolver = new TypeResolver(JavaCore.create(searchProject), getModuleIndex());
+            
+            typeResolvers.put(searchProject, resolver);
+        }
+        
+        return resolver;
+    }
+    
+    protected synchronized ConstantResolver getConstantResolver()
+    {
+        if (constantResolver == null)
+        {
+            constantResolver = new ConstantResolver(project);
+        }
+        return constantResolver;
+    }
+    
+    protected synchronized TapestryModuleIndex getModuleIndex()
+    {
+        if (moduleIndex == null)
+        {
+            moduleIndex = TapestryModuleIndex.load(project);
+        }
+        return moduleIndex;
+    }
 
     public boolean contains(IProject project)
     {
@@ -214,6 +787,258 @@ public class TapestryProject
         return false;
     }
 
+    /**
+     * Finds pages, components or mixins of the application and all its libraries by name.
+     * 
+     * @see ComponentIndex#find(Kind, String, String, int)
+     * @return Matching classes, best matches first, or empty list if the project is not analyzed yet.
+     */
+    public List<ComponentIndex.Entry> findComponents(Kind kind, String libraryPrefix, String query, int limit)
+    {
+        ComponentIndex componentIndex = this.componentIndex;
+        
+        return componentIndex != null
+             ? componentIndex.find(kind, libraryPrefix, query, limit)
+             : Collections.<ComponentIndex.Entry>emptyList();
+    }
+    
+    /**
+     * Finds templates and Java files where the page, component or mixin of the context is used.
+     * 
+     * @return Usages of the context, or empty list if the project is not analyzed yet.
+     */
+    public List<ComponentUsageIndex.Usage> findUsages(TapestryContext context)
+    {
+        IJavaElement element = getJavaElement(context);
+        
+        if (element == null)
+        {
+            return Collections.emptyList();
+        }
+        
+        String className = ComponentIndex.getQualifiedName(element);
+        
+        if (className == null)
+        {
+            return Collections.emptyList();
+        }
+        
+        return usageIndex.findUsages(className);
+    }
+    
+    /**
+     * Finds pages, components and mixins used in the template and Java file of the context.
+     * 
+     * @return Classes of the components used by the context, in the order of their first usage.
+     */
+    public List<ComponentIndex.Entry> findUses(TapestryContext context)
+    {
+        ComponentIndex componentIndex = this.componentIndex;
+        
+        if (componentIndex == null)
+        {
+            return Collections.emptyList();
+        }
+        
+        Set<ComponentIndex.Entry> entries = new LinkedHashSet<ComponentIndex.Entry>();
+        
+        for (TapestryFile file : context.getFiles())
+        {
+            if (!(file instanceof LocalFile))
+            {
+                continue;
+            }
+            
+            for (ComponentUsageIndex.Usage usage : usageIndex.findUses(((LocalFile) file).getFile()))
+            {
+                ComponentIndex.Entry entry = usage.isClassName()
+                                           ? componentIndex.findClass(usage.getKind(), usage.getName())
+                                           : componentIndex.resolve(usage.getKind(), usage.getName());
+                
+                if (entry != null)
+                {
+                    entries.add(entry);
+                }
+            }
+        }
+        
+        return new ArrayList<ComponentIndex.Entry>(entries);
+    }
+    
+    public MessageCatalogIndex getMessageCatalogIndex()
+    {
+        return messageCatalogIndex;
+    }
+    
+    /**
+     * @return Names of the message catalogs of the context in the order they are searched for keys:
+     *         catalog of the component first, then the application catalogs.
+     */
+    public List<String> getMessageCatalogs(TapestryContext context)
+    {
+        List<String> catalogs = new ArrayList<String>();
+        
+        TapestryFile javaFile = context.getJavaFile();
+        
+        if (javaFile instanceof LocalFile)
+        {
+            IFile file = ((LocalFile) javaFile).getFile();
+            
+            IContainer root = ProjectTopology.get(project).findRoot(file);
+            
+            if (root != null)
+            {
+                catalogs.add(MessageCatalogIndex.getCatalogName(root, file));
+            }
+        }
+        
+        catalogs.addAll(filterCatalogs);
+        
+        return catalogs;
+    }
+    
+    /**
+     * Resolves catalogs of Tapestry filters from web.xml, which may search the class path of the project.
+     * 
+     * @return <code>true</code> if the catalogs have changed.
+     */
+    private boolean buildFilterCatalogs()
+    {
+        List<String> catalogs = new ArrayList<String>();
+        
+        WebXml webXml = Activator.getDefault().getWebXml(project);
+        
+        for (String filterName : webXml.getFilterNames())
+        {
+            if (isTapestryFilter(webXml.getFilterClassName(filterName)))
+            {
+                catalogs.add("WEB-INF/" + filterName);
+            }
+        }
+        
+        if (catalogs.equals(filterCatalogs))
+        {
+            return false;
+        }
+        
+        filterCatalogs = Collections.unmodifiableList(catalogs);
+        
+        return true;
+    }
+    
+    private boolean isTapestryFilter(String className)
+    {
+        if (className == null)
+        {
+            return false;
+        }
+        
+        if (TAPESTRY_FILTER.equals(className))
+        {
+            return true;
+        }
+        
+        Boolean tapestryFilter = tapestryFilterClasses.get(className);
+        
+        if (tapestryFilter == null)
+        {
+            tapestryFilter = false;
+            
+            try
+            {
+                //  Not using type resolvers of the project here, they're locked while the graph is built
+                IType type = JavaCore.create(project).findType(className);
+                
+                if (type != null)
+                {
+                    for (IType superclass : type.newSupertypeHierarchy(null).getAllSuperclasses(type))
+                    {
+                        if (TAPESTRY_FILTER.equals(superclass.getFullyQualifiedName()))
+                        {
+                            tapestryFilter = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            catch (JavaModelException e)
+            {
+                Activator.getDefault().logWarning("Error resolving filter class " + className, e);
+            }
+            
+            tapestryFilterClasses.put(className, tapestryFilter);
+        }
+        
+        return tapestryFilter;
+    }
+    
+    /**
+     * @return Message with the given key in all locales of the first catalog of the context that has it,
+     *         or empty list if the key is not found.
+     */
+    public List<MessageCatalogIndex.Message> findMessages(TapestryContext context, String key)
+    {
+        for (String catalog : getMessageCatalogs(context))
+        {
+            List<MessageCatalogIndex.Message> messages = messageCatalogIndex.findMessages(catalog, key);
+            
+            if (!messages.isEmpty())
+            {
+                return messages;
+            }
+        }
+        
+        return Collections.emptyList();
+    }
+    
+    /**
+     * @return Properties files of the catalog where the key was found that don't have it in their locale.
+     */
+    public List<IFile> findFilesMissingMessage(TapestryContext context, String key)
+    {
+        for (String catalog : getMessageCatalogs(context))
+        {
+            if (!messageCatalogIndex.findMessages(catalog, key).isEmpty())
+            {
+                return messageCatalogIndex.findFilesMissingKey(catalog, key);
+            }
+        }
+        
+        return Collections.emptyList();
+    }
+    
+    /**
+     * @return Keys of all catalogs of the context, sorted.
+     */
+    public Set<String> getMessageKeys(TapestryContext context)
+    {
+        Set<String> keys = new TreeSet<String>();
+        
+        for (String catalog : getMessageCatalogs(context))
+        {
+            keys.addAll(messageCatalogIndex.getKeys(catalog));
+        }
+        
+        return keys;
+    }
+    
+    private IJavaElement getJavaElement(TapestryContext context)
+    {
+        TapestryFile javaFile = context.getJavaFile();
+        
+        if (javaFile instanceof LocalFile)
+        {
+            return JavaCore.create(((LocalFile) javaFile).getFile());
+        }
+        
+        if (javaFile instanceof ClassFile)
+        {
+            return ((ClassFile) javaFile).getClassFile();
+        }
+        
+        return null;
+    }
+    
     public TapestryContext findComponentContext(String componentName) throws JavaModelException
     {
         String libraryPrefix = "";
@@ -236,6 +1061,22 @@ public class TapestryProject
             componentNameWithoutPrefix = componentName.substring(index + 1);
         }
         
+        ComponentIndex componentIndex = this.componentIndex;
+        
+        if (componentIndex != null)
+        {
+            TapestryContext context = componentIndex.findComponentContext(libraryPrefix, componentNameWithoutPrefix);
+            
+            if (context == null && "".equals(libraryPrefix))
+            {
+                context = componentIndex.findComponentContext("core", componentNameWithoutPrefix);
+            }
+            
+            return context;
+        }
+        
+        //  Index is not built yet, look for the component in the modules one by one
+        
         for (TapestryModule module : modules)
         {
             if ("".equals(libraryPrefix) && module.isAppModule())
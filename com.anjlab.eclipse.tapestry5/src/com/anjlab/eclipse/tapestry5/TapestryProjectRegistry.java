@@ -0,0 +1,96 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Workspace-wide registry of {@link TapestryProject}s.
+ * <p>
+ * All workbench windows and views that look at the same Eclipse project share one model,
+ * so every project is analyzed and kept in memory only once. Models are reference counted
+ * and dropped when the last holder releases them, or when the project is closed or deleted.
+ */
+public class TapestryProjectRegistry
+{
+    private static class Entry
+    {
+        private final TapestryProject tapestryProject;
+        private int referenceCount;
+        
+        public Entry(TapestryProject tapestryProject)
+        {
+            this.tapestryProject = tapestryProject;
+        }
+    }
+    
+    private final Map<IProject, Entry> entries = new HashMap<IProject, Entry>();
+    
+    /**
+     * Returns shared model of the project, creating one if needed.
+     * Every call should be paired with {@link #release(TapestryProject)}.
+     */
+    public synchronized TapestryProject acquire(IProject project)
+    {
+        Entry entry = entries.get(project);
+        
+        if (entry == null)
+        {
+            entry = new Entry(new TapestryProject(project));
+            
+            entries.put(project, entry);
+        }
+        
+        entry.referenceCount++;
+        
+        return entry.tapestryProject;
+    }
+    
+    public synchronized void release(TapestryProject tapestryProject)
+    {
+        Entry entry = entries.get(tapestryProject.getProject());
+        
+        //  Model may have been evicted already
+        if (entry == null || entry.tapestryProject != tapestryProject)
+        {
+            return;
+        }
+        
+        if (--entry.referenceCount <= 0)
+        {
+            entries.remove(tapestryProject.getProject());
+        }
+    }
+    
+    /**
+     * Drops model of the project regardless of its reference count, i.e. because the project was closed.
+     *
+     * @return Evicted model, or <code>null</code> if there was no model for the project.
+     */
+    public synchronized TapestryProject evict(IProject project)
+    {
+        Entry entry = entries.remove(project);
+        
+        return entry != null ? entry.tapestryProject : null;
+    }
+    
+    public synchronized List<TapestryProject> getTapestryProjects()
+    {
+        List<TapestryProject> tapestryProjects = new ArrayList<TapestryProject>(entries.size());
+        
+        for (Entry entry : entries.values())
+        {
+            tapestryProjects.add(entry.tapestryProject);
+        }
+        
+        return tapestryProjects;
+    }
+    
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+}
@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -147,11 +149,12 @@ public class TapestryUtils
         return null;
     }
 
+    /**
+     * @return Primary web application context root of the project, see {@link ProjectTopology#getWebapps()}.
+     */
     public static IContainer findWebapp(IProject project)
     {
-        //  TODO Support non-default locations?
-        
-        return (IContainer) project.findMember("src/main/webapp");
+        return ProjectTopology.get(project).getWebapp();
     }
     
     public static boolean isTapestryAppProject(IProject project)
@@ -189,7 +192,7 @@ public class TapestryUtils
     {
         if (forFile instanceof LocalFile)
         {
-            return new LocalTapestryContext(forFile);
+            return createTapestryContext(((LocalFile) forFile).getFile());
         }
         
         return TapestryContext.emptyContext();
@@ -197,33 +200,48 @@ public class TapestryUtils
 
     public static TapestryContext createTapestryContext(IFile file)
     {
-        return new LocalTapestryContext(file);
+        return Activator.getDefault().getTapestryContextCache().get(file);
+    }
+    
+    /**
+     * @return The file in its context, which may be shared with the other files of the page or component.
+     */
+    public static TapestryFile getTapestryFile(IFile file)
+    {
+        TapestryContext context = createTapestryContext(file);
+        
+        TapestryFile tapestryFile = context.findFile(file);
+        
+        return tapestryFile != null ? tapestryFile : context.getInitialFile();
     }
 
     public static TapestryContext createTapestryContext(IWorkbenchWindow window)
+    {
+        TapestryFile file = getTapestryFile(window);
+        
+        return file != null ? file.getContext() : TapestryContext.emptyContext();
+    }
+    
+    /**
+     * @return File selected in the window, opened by its active editor, or selected in the Project Explorer.
+     */
+    public static TapestryFile getTapestryFile(IWorkbenchWindow window)
     {
         TapestryFile file = getTapestryFileFromSelection(window.getSelectionService().getSelection());
         
         if (file != null)
         {
-            return file.getContext();
+            return file;
         }
         
         file = TapestryUtils.getTapestryFileFromPage(window.getActivePage());
         
         if (file != null)
         {
-            return file.getContext();
-        }
-        
-        file = getTapestryFileFromSelection(EclipseUtils.getProjectExplorerSelection(window));
-        
-        if (file != null)
-        {
-            return file.getContext();
+            return file;
         }
         
-        return TapestryContext.emptyContext();
+        return getTapestryFileFromSelection(EclipseUtils.getProjectExplorerSelection(window));
     }
 
     public static IContainer getRoot(IFile forFile)
@@ -233,52 +251,12 @@ public class TapestryUtils
             return null;
         }
         
-        final IContainer webapp = findWebapp(forFile.getProject());
-        
-        RootDetector rootDetector = new RootDetector()
-        {
-            @Override
-            public boolean isRoot(IContainer container)
-            {
-                try
-                {
-                    return EclipseUtils.isSourceFolder(container) || container.equals(webapp);
-                }
-                catch (JavaModelException e)
-                {
-                    return false;
-                }
-            }
-        };
-        
-        return getRoot(forFile, rootDetector);
-    }
-    
-    private static interface RootDetector
-    {
-        boolean isRoot(IContainer container);
+        return ProjectTopology.get(forFile.getProject()).findRoot(forFile);
     }
     
-    private static IContainer getRoot(IFile forFile, RootDetector rootDetector)
-    {
-        if (forFile == null)
-        {
-            return null;
-        }
-        
-        IContainer container = forFile.getParent();
-        
-        while (container != null && !rootDetector.isRoot(container))
-        {
-            container = container.getParent();
-        }
-        
-        return container;
-    }
-
     public static boolean isWebApp(IContainer root)
     {
-        return root.equals(findWebapp(root.getProject()));
+        return ProjectTopology.get(root.getProject()).isWebapp(root);
     }
 
     public static String pathToPackageName(String relativeFileName, boolean leadingDot)
@@ -289,9 +267,33 @@ public class TapestryUtils
                  .replaceAll("/", ".");
     }
 
+    /**
+     * @return Contents of the file decoded with its charset, so that offsets in the text match the ones in editors.
+     */
+    public static String readToEnd(IFile file) throws CoreException
+    {
+        InputStream stream = file.getContents();
+        
+        try
+        {
+            return readToEnd(new InputStreamReader(stream, file.getCharset()));
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            Activator.getDefault().logWarning("Unsupported charset of " + file.getFullPath(), e);
+            
+            return readToEnd(stream);
+        }
+    }
+    
     public static String readToEnd(InputStream stream)
     {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+        return readToEnd(new InputStreamReader(stream));
+    }
+    
+    private static String readToEnd(Reader streamReader)
+    {
+        BufferedReader reader = new BufferedReader(streamReader);
         try
         {
             StringBuilder builder = new StringBuilder();
@@ -340,6 +342,16 @@ public class TapestryUtils
     }
 
     public static TapestryFile getTapestryFileFromPage(IWorkbenchPage page)
+    {
+        IEditorInput editorInput = getActiveEditorInput(page);
+        
+        return editorInput != null ? getTapestryFileFromEditorInput(editorInput) : null;
+    }
+    
+    /**
+     * @return Input of the active editor of the page, cheap enough to be called on every selection change.
+     */
+    public static IEditorInput getActiveEditorInput(IWorkbenchPage page)
     {
         if (page == null)
         {
@@ -353,13 +365,20 @@ public class TapestryUtils
             return null;
         }
         
-        IEditorInput editorInput = activeEditor.getEditorInput();
-        
+        return activeEditor.getEditorInput();
+    }
+    
+    /**
+     * Creates {@link TapestryContext} of the file opened by the editor, this may take a while
+     * and access Java model, so better not do this from UI thread.
+     */
+    public static TapestryFile getTapestryFileFromEditorInput(IEditorInput editorInput)
+    {
         if (editorInput instanceof IFileEditorInput)
         {
             IFileEditorInput fileEditorInput = (IFileEditorInput) editorInput;
             
-            return createTapestryContext(fileEditorInput.getFile()).getInitialFile();
+            return getTapestryFile(fileEditorInput.getFile());
         }
         
         if (editorInput instanceof IStorageEditorInput)
@@ -489,7 +508,7 @@ public class TapestryUtils
             
             if (file != null)
             {
-                return createTapestryContext(file).getInitialFile();
+                return getTapestryFile(file);
             }
         }
         
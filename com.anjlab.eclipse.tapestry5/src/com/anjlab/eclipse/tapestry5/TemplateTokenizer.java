@@ -0,0 +1,586 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming tokenizer of Tapestry templates.
+ * <p>
+ * Tokens are reported to the {@link Handler} as offsets in the text, no objects are created per token,
+ * so the tokenizer can be used to index many templates and to look up the token at some offset of an editor.
+ * Tokens are reported in the order of their start offsets, so a lookup can {@link #stop()} as soon as
+ * it finds its token or gets a token that starts after the offset.
+ * <p>
+ * Broken markup never stops tokenization: unterminated tags, attribute values, comments and expansions
+ * end where the next tag starts or at the end of the text. Namespace declarations are not scoped,
+ * a declaration takes effect from the next tag and stays in effect till the end of the template.
+ * Prefixes <code>t</code> and <code>p</code> are assumed for the Tapestry and parameter namespaces
+ * even without declarations, so that template fragments are tokenized the same way.
+ */
+public class TemplateTokenizer
+{
+    public enum TokenType
+    {
+        /**
+         * Name of the element in the start tag, including prefix.
+         */
+        START_TAG,
+        
+        /**
+         * Name of the element in the end tag, including prefix.
+         */
+        END_TAG,
+        
+        /**
+         * <code>&gt;</code> of the start tag.
+         */
+        TAG_END,
+        
+        /**
+         * <code>/&gt;</code> of the start tag.
+         */
+        EMPTY_TAG_END,
+        
+        /**
+         * Name of the attribute, including prefix.
+         */
+        ATTRIBUTE_NAME,
+        
+        /**
+         * Value of the attribute without quotes.
+         */
+        ATTRIBUTE_VALUE,
+        
+        /**
+         * Local name of the element or attribute from Tapestry namespace, i.e. <code>grid</code> of <code>t:grid</code>,
+         * follows the {@link #START_TAG}, {@link #END_TAG} or {@link #ATTRIBUTE_NAME} token of the name.
+         */
+        TAPESTRY_NAME,
+        
+        /**
+         * Local name of the block parameter element, i.e. <code>empty</code> of <code>p:empty</code>,
+         * follows the {@link #START_TAG} or {@link #END_TAG} token of the name.
+         */
+        PARAMETER_NAME,
+        
+        /**
+         * Content of the <code>${...}</code> expansion, in text or attribute values.
+         */
+        EXPANSION,
+        
+        /**
+         * Binding prefix without colon, i.e. <code>message</code> of <code>message:title</code>,
+         * at the beginning of attribute values or expansions. URLs like <code>http://...</code> are not reported.
+         * Whether the prefix is meaningful depends on the attribute, so this is left for the consumer to decide.
+         */
+        BINDING_PREFIX,
+        
+        /**
+         * Text between tags, including whitespace.
+         */
+        TEXT,
+        
+        /**
+         * Content of the comment.
+         */
+        COMMENT,
+        
+        /**
+         * Content of the CDATA section.
+         */
+        CDATA
+    }
+    
+    public static interface Handler
+    {
+        /**
+         * @param start Offset of the first character of the token.
+         * @param end Offset after the last character of the token.
+         */
+        void token(TokenType type, int start, int end);
+    }
+    
+    private static final String TAPESTRY_NAMESPACE_PREFIX = "http://tapestry.apache.org/schema/tapestry_5";
+    private static final String PARAMETER_NAMESPACE = "tapestry:parameter";
+    
+    private static final String XMLNS = "xmlns";
+    
+    private final CharSequence text;
+    private final int length;
+    
+    private final List<String> tapestryPrefixes = new ArrayList<String>();
+    private final List<String> parameterPrefixes = new ArrayList<String>();
+    
+    //  Unprefixed elements are from Tapestry namespace
+    private boolean tapestryDefaultNamespace;
+    
+    private Handler handler;
+    
+    private boolean stopped;
+    
+    public TemplateTokenizer(CharSequence text)
+    {
+        this.text = text;
+        this.length = text.length();
+        
+        tapestryPrefixes.add("t");
+        parameterPrefixes.add("p");
+    }
+    
+    public void tokenize(Handler handler)
+    {
+        this.handler = handler;
+        this.stopped = false;
+        
+        int textStart = 0;
+        int position = 0;
+        
+        while (position < length && !stopped)
+        {
+            if (text.charAt(position) != '<')
+            {
+                position++;
+                continue;
+            }
+            
+            int next;
+            
+            if (startsWith("<!--", position))
+            {
+                text(textStart, position);
+                next = section(TokenType.COMMENT, position + 4, "-->");
+            }
+            else if (startsWith("<![CDATA[", position))
+            {
+                text(textStart, position);
+                next = section(TokenType.CDATA, position + 9, "]]>");
+            }
+            else if (startsWith("<!", position) || startsWith("<?", position))
+            {
+                //  DOCTYPE or processing instruction
+                text(textStart, position);
+                next = skipTag(position + 2);
+            }
+            else if (startsWith("</", position) && position + 2 < length && isNameStart(text.charAt(position + 2)))
+            {
+                text(textStart, position);
+                next = endTag(position + 2);
+            }
+            else if (position + 1 < length && isNameStart(text.charAt(position + 1)))
+            {
+                text(textStart, position);
+                next = startTag(position + 1);
+            }
+            else
+            {
+                //  Stray '<' is a part of the text
+                position++;
+                continue;
+            }
+            
+            textStart = position = next;
+        }
+        
+        text(textStart, length);
+        
+        this.handler = null;
+    }
+    
+    /**
+     * Stops tokenization, no more tokens are reported to the handler after this call.
+     * Meant to be called from the {@link Handler}.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+    
+    private void token(TokenType type, int start, int end)
+    {
+        if (!stopped)
+        {
+            handler.token(type, start, end);
+        }
+    }
+    
+    private void text(int start, int end)
+    {
+        if (start < end)
+        {
+            token(TokenType.TEXT, start, end);
+            
+            expansions(start, end);
+        }
+    }
+    
+    private int section(TokenType type, int start, String terminator)
+    {
+        int end = indexOf(terminator, start, length);
+        
+        if (end < 0)
+        {
+            token(type, start, length);
+            return length;
+        }
+        
+        token(type, start, end);
+        return end + terminator.length();
+    }
+    
+    private int skipTag(int position)
+    {
+        while (position < length)
+        {
+            char ch = text.charAt(position);
+            
+            if (ch == '>')
+            {
+                return position + 1;
+            }
+            
+            if (ch == '<')
+            {
+                return position;
+            }
+            
+            position++;
+        }
+        return length;
+    }
+    
+    private int endTag(int start)
+    {
+        int end = nameEnd(start);
+        
+        name(TokenType.END_TAG, start, end);
+        
+        return skipTag(end);
+    }
+    
+    private int startTag(int start)
+    {
+        int position = nameEnd(start);
+        
+        name(TokenType.START_TAG, start, position);
+        
+        while (true)
+        {
+            position = skipWhitespace(position);
+            
+            if (position >= length || stopped)
+            {
+                return length;
+            }
+            
+            char ch = text.charAt(position);
+            
+            if (ch == '>')
+            {
+                token(TokenType.TAG_END, position, position + 1);
+                return position + 1;
+            }
+            
+            if (ch == '/' && position + 1 < length && text.charAt(position + 1) == '>')
+            {
+                token(TokenType.EMPTY_TAG_END, position, position + 2);
+                return position + 2;
+            }
+            
+            if (ch == '<')
+            {
+                //  Tag wasn't closed, the next one starts here
+                return position;
+            }
+            
+            if (isAttributeNameChar(ch))
+            {
+                position = attribute(position);
+            }
+            else
+            {
+                //  Stray quote, slash or equals sign
+                position++;
+            }
+        }
+    }
+    
+    private int attribute(int nameStart)
+    {
+        int nameEnd = nameStart;
+        
+        while (nameEnd < length && isAttributeNameChar(text.charAt(nameEnd)))
+        {
+            nameEnd++;
+        }
+        
+        name(TokenType.ATTRIBUTE_NAME, nameStart, nameEnd);
+        
+        int position = skipWhitespace(nameEnd);
+        
+        if (position >= length || text.charAt(position) != '=')
+        {
+            //  Attribute without value
+            return nameEnd;
+        }
+        
+        position = skipWhitespace(position + 1);
+        
+        if (position >= length)
+        {
+            return length;
+        }
+        
+        char quote = text.charAt(position);
+        
+        int valueStart;
+        int valueEnd;
+        int next;
+        
+        if (quote == '"' || quote == '\'')
+        {
+            valueStart = position + 1;
+            valueEnd = valueStart;
+            
+            //  Values can't contain '<', so it's where the next tag starts if the quote is missing
+            while (valueEnd < length && text.charAt(valueEnd) != quote && text.charAt(valueEnd) != '<')
+            {
+                valueEnd++;
+            }
+            
+            next = valueEnd < length && text.charAt(valueEnd) == quote ? valueEnd + 1 : valueEnd;
+        }
+        else
+        {
+            valueStart = position;
+            valueEnd = valueStart;
+            
+            while (valueEnd < length && isUnquotedValueChar(valueEnd))
+            {
+                valueEnd++;
+            }
+            
+            next = valueEnd;
+        }
+        
+        token(TokenType.ATTRIBUTE_VALUE, valueStart, valueEnd);
+        
+        if (regionStartsWith(XMLNS, nameStart, nameEnd)
+                && (nameEnd - nameStart == XMLNS.length() || text.charAt(nameStart + XMLNS.length()) == ':'))
+        {
+            namespace(nameStart, nameEnd, valueStart, valueEnd);
+        }
+        else
+        {
+            bindingPrefix(valueStart, valueEnd);
+            
+            expansions(valueStart, valueEnd);
+        }
+        
+        return next;
+    }
+    
+    private void namespace(int nameStart, int nameEnd, int valueStart, int valueEnd)
+    {
+        String uri = text.subSequence(valueStart, valueEnd).toString().trim();
+        
+        if (nameEnd - nameStart == XMLNS.length())
+        {
+            tapestryDefaultNamespace = uri.startsWith(TAPESTRY_NAMESPACE_PREFIX);
+            return;
+        }
+        
+        String prefix = text.subSequence(nameStart + XMLNS.length() + 1, nameEnd).toString();
+        
+        tapestryPrefixes.remove(prefix);
+        parameterPrefixes.remove(prefix);
+        
+        if (uri.startsWith(TAPESTRY_NAMESPACE_PREFIX))
+        {
+            tapestryPrefixes.add(prefix);
+        }
+        else if (uri.equals(PARAMETER_NAMESPACE))
+        {
+            parameterPrefixes.add(prefix);
+        }
+    }
+    
+    private void name(TokenType type, int start, int end)
+    {
+        token(type, start, end);
+        
+        int colon = indexOf(':', start, end);
+        
+        if (colon < 0)
+        {
+            if (tapestryDefaultNamespace && type != TokenType.ATTRIBUTE_NAME && start < end)
+            {
+                token(TokenType.TAPESTRY_NAME, start, end);
+            }
+            return;
+        }
+        
+        if (containsRegion(tapestryPrefixes, start, colon))
+        {
+            token(TokenType.TAPESTRY_NAME, colon + 1, end);
+        }
+        else if (type != TokenType.ATTRIBUTE_NAME && containsRegion(parameterPrefixes, start, colon))
+        {
+            token(TokenType.PARAMETER_NAME, colon + 1, end);
+        }
+    }
+    
+    private void expansions(int start, int end)
+    {
+        int position = start;
+        
+        while (!stopped && (position = indexOf("${", position, end)) >= 0)
+        {
+            int contentStart = position + 2;
+            int contentEnd = indexOf('}', contentStart, end);
+            
+            if (contentEnd < 0)
+            {
+                contentEnd = end;
+            }
+            
+            token(TokenType.EXPANSION, contentStart, contentEnd);
+            
+            bindingPrefix(skipWhitespace(contentStart), contentEnd);
+            
+            position = contentEnd;
+        }
+    }
+    
+    private void bindingPrefix(int start, int end)
+    {
+        if (start >= end || !Character.isLetter(text.charAt(start)))
+        {
+            return;
+        }
+        
+        int position = start + 1;
+        
+        while (position < end)
+        {
+            char ch = text.charAt(position);
+            
+            if (ch == ':')
+            {
+                if (!startsWith("//", position + 1))
+                {
+                    token(TokenType.BINDING_PREFIX, start, position);
+                }
+                return;
+            }
+            
+            if (!Character.isLetterOrDigit(ch) && ch != '-' && ch != '_')
+            {
+                return;
+            }
+            
+            position++;
+        }
+    }
+    
+    private int nameEnd(int start)
+    {
+        int position = start;
+        
+        while (position < length && isNameChar(text.charAt(position)))
+        {
+            position++;
+        }
+        return position;
+    }
+    
+    private int skipWhitespace(int position)
+    {
+        while (position < length && Character.isWhitespace(text.charAt(position)))
+        {
+            position++;
+        }
+        return position;
+    }
+    
+    private static boolean isNameStart(char ch)
+    {
+        return Character.isLetter(ch) || ch == '_' || ch == ':';
+    }
+    
+    private static boolean isNameChar(char ch)
+    {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == ':' || ch == '-' || ch == '.';
+    }
+    
+    private static boolean isAttributeNameChar(char ch)
+    {
+        return !Character.isWhitespace(ch)
+            && ch != '=' && ch != '>' && ch != '<' && ch != '/' && ch != '"' && ch != '\'';
+    }
+    
+    private boolean isUnquotedValueChar(int position)
+    {
+        char ch = text.charAt(position);
+        
+        return !Character.isWhitespace(ch) && ch != '>' && ch != '<'
+            && !(ch == '/' && position + 1 < length && text.charAt(position + 1) == '>');
+    }
+    
+    private boolean startsWith(String prefix, int position)
+    {
+        return regionStartsWith(prefix, position, length);
+    }
+    
+    private boolean regionStartsWith(String prefix, int start, int end)
+    {
+        if (end - start < prefix.length())
+        {
+            return false;
+        }
+        
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (text.charAt(start + i) != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean containsRegion(List<String> values, int start, int end)
+    {
+        for (String value : values)
+        {
+            if (value.length() == end - start && regionStartsWith(value, start, end))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private int indexOf(char ch, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (text.charAt(i) == ch)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private int indexOf(String value, int start, int end)
+    {
+        for (int i = start; i + value.length() <= end; i++)
+        {
+            if (regionStartsWith(value, i, end))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
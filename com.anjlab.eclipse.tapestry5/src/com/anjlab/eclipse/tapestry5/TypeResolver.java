@@ -0,0 +1,159 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Resolves class names to types of a Java project in batches.
+ * <p>
+ * Lookup order is: results of previous lookups (including misses), type handles
+ * from the {@link TapestryModuleIndex}, {@link IJavaProject#findType(String)},
+ * and finally one search engine query for all names that are still unresolved.
+ * <p>
+ * Results are remembered for the lifetime of the resolver, so a new resolver
+ * should be created when class path of the project changes. Smaller changes,
+ * like added or removed compilation units, can be handled with {@link #forget(Collection)}
+ * and {@link #forgetMisses()}.
+ */
+public class TypeResolver
+{
+    private final IJavaProject javaProject;
+    private final TapestryModuleIndex index;
+    
+    private final Map<String, IType> resolvedTypes = new HashMap<String, IType>();
+    
+    public TypeResolver(IJavaProject javaProject, TapestryModuleIndex index)
+    {
+        this.javaProject = javaProject;
+        this.index = index;
+    }
+    
+    public IType resolve(String className)
+    {
+        return resolve(Collections.singletonList(className)).get(className);
+    }
+    
+    /**
+     * @return Map from every given class name to its type, or to <code>null</code> if type wasn't found.
+     */
+    public synchronized Map<String, IType> resolve(Collection<String> classNames)
+    {
+        Map<String, IType> types = new HashMap<String, IType>();
+        
+        List<String> unresolved = new ArrayList<String>();
+        
+        for (String className : classNames)
+        {
+            if (resolvedTypes.containsKey(className))
+            {
+                types.put(className, resolvedTypes.get(className));
+                continue;
+            }
+            
+            IType type = findIndexedType(className);
+            
+            if (type == null)
+            {
+                type = findTypeOnClasspath(className);
+            }
+            
+            if (type != null)
+            {
+                remember(className, type);
+                
+                types.put(className, type);
+            }
+            else if (!unresolved.contains(className))
+            {
+                unresolved.add(className);
+            }
+        }
+        
+        if (!unresolved.isEmpty())
+        {
+            Map<String, IType> found = EclipseUtils.findTypeDeclarations(javaProject.getProject(), unresolved);
+            
+            for (String className : unresolved)
+            {
+                IType type = found.get(className);
+                
+                remember(className, type);
+                
+                types.put(className, type);
+            }
+        }
+        
+        return types;
+    }
+    
+    /**
+     * Drops remembered results for the given class names, i.e. because their compilation units were removed.
+     */
+    public synchronized void forget(Collection<String> classNames)
+    {
+        resolvedTypes.keySet().removeAll(classNames);
+    }
+    
+    /**
+     * Drops remembered misses, so that types added since the last lookup can be found.
+     */
+    public synchronized void forgetMisses()
+    {
+        resolvedTypes.values().removeAll(Collections.singleton(null));
+    }
+    
+    private void remember(String className, IType type)
+    {
+        resolvedTypes.put(className, type);
+        
+        if (type != null)
+        {
+            index.putTypeHandle(javaProject, className, type);
+        }
+    }
+    
+    private IType findIndexedType(String className)
+    {
+        String handle = index.getTypeHandle(javaProject, className);
+        
+        if (handle == null)
+        {
+            return null;
+        }
+        
+        IJavaElement element = JavaCore.create(handle);
+        
+        if (element instanceof IType && element.exists())
+        {
+            return (IType) element;
+        }
+        
+        index.removeTypeHandle(javaProject, className);
+        
+        return null;
+    }
+    
+    private IType findTypeOnClasspath(String className)
+    {
+        try
+        {
+            IType type = javaProject.findType(className);
+            
+            return type != null && type.exists() ? type : null;
+        }
+        catch (JavaModelException e)
+        {
+            return null;
+        }
+    }
+}
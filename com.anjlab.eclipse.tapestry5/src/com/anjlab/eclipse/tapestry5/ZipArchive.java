@@ -0,0 +1,318 @@
+package com.anjlab.eclipse.tapestry5;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal reader of ZIP archives that works directly with the central directory.
+ * <p>
+ * Unlike {@link java.util.zip.ZipFile} or JDT's jar entry tree it doesn't create objects for entries
+ * that are not requested. Archive is read with positional NIO reads instead of memory mapping,
+ * because mapped files stay locked on Windows until the buffer is garbage collected.
+ * <p>
+ * ZIP64 archives are not supported, {@link ZipException} is thrown for them,
+ * so callers should fall back to the regular API.
+ */
+public class ZipArchive
+{
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    
+    private final File file;
+    
+    public ZipArchive(File file)
+    {
+        this.file = file;
+    }
+    
+    /**
+     * @return Uncompressed content of the entry, or <code>null</code> if there's no such entry in the archive.
+     */
+    public byte[] readEntry(String entryName) throws IOException
+    {
+        byte[] target = toBytes(entryName);
+        
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            
+            ByteBuffer directory = readCentralDirectory(channel);
+            
+            byte[] name = new byte[256];
+            
+            while (directory.remaining() >= CEN_HEADER_SIZE)
+            {
+                int position = directory.position();
+                
+                if (directory.getInt(position) != CEN_SIGNATURE)
+                {
+                    throw new ZipException("Invalid central directory header in " + file);
+                }
+                
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                
+                if (nameLength == target.length)
+                {
+                    if (name.length < nameLength)
+                    {
+                        name = new byte[nameLength];
+                    }
+                    
+                    directory.position(position + CEN_HEADER_SIZE);
+                    directory.get(name, 0, nameLength);
+                    
+                    if (equals(name, target))
+                    {
+                        int method = directory.getShort(position + 10) & 0xFFFF;
+                        long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+                        long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+                        long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+                        
+                        return readData(channel, method, compressedSize, size, localHeaderOffset);
+                    }
+                }
+                
+                directory.position(position + CEN_HEADER_SIZE + nameLength + extraLength + commentLength);
+            }
+            
+            return null;
+        }
+        finally
+        {
+            try { randomAccessFile.close(); } catch (IOException e) { }
+        }
+    }
+    
+    /**
+     * @return Names of all entries of the archive, in the order of the central directory.
+     */
+    public List<String> readEntryNames() throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        
+        try
+        {
+            ByteBuffer directory = readCentralDirectory(randomAccessFile.getChannel());
+            
+            List<String> names = new ArrayList<String>();
+            
+            byte[] name = new byte[256];
+            
+            while (directory.remaining() >= CEN_HEADER_SIZE)
+            {
+                int position = directory.position();
+                
+                if (directory.getInt(position) != CEN_SIGNATURE)
+                {
+                    throw new ZipException("Invalid central directory header in " + file);
+                }
+                
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                
+                if (name.length < nameLength)
+                {
+                    name = new byte[nameLength];
+                }
+                
+                directory.position(position + CEN_HEADER_SIZE);
+                directory.get(name, 0, nameLength);
+                
+                names.add(new String(name, 0, nameLength, "UTF-8"));
+                
+                directory.position(position + CEN_HEADER_SIZE + nameLength + extraLength + commentLength);
+            }
+            
+            return names;
+        }
+        finally
+        {
+            try { randomAccessFile.close(); } catch (IOException e) { }
+        }
+    }
+    
+    private ByteBuffer readCentralDirectory(FileChannel channel) throws IOException
+    {
+        long fileSize = channel.size();
+        
+        if (fileSize < EOCD_SIZE)
+        {
+            throw new ZipException("Not a ZIP archive: " + file);
+        }
+        
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        
+        //  End of central directory record is followed by variable length comment,
+        //  so look for its signature starting from the end of the file
+        for (int position = tailSize - EOCD_SIZE; position >= 0; position--)
+        {
+            if (tail.getInt(position) == EOCD_SIGNATURE)
+            {
+                long directorySize = tail.getInt(position + 12) & 0xFFFFFFFFL;
+                long directoryOffset = tail.getInt(position + 16) & 0xFFFFFFFFL;
+                
+                if (directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL)
+                {
+                    throw new ZipException("ZIP64 archives not supported: " + file);
+                }
+                
+                if (directoryOffset + directorySize > fileSize)
+                {
+                    throw new ZipException("Invalid central directory location in " + file);
+                }
+                
+                return read(channel, directoryOffset, (int) directorySize);
+            }
+        }
+        
+        throw new ZipException("End of central directory not found in " + file);
+    }
+    
+    private byte[] readData(FileChannel channel, int method, long compressedSize, long size, long localHeaderOffset)
+            throws IOException
+    {
+        if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE)
+        {
+            throw new ZipException("Entry too large in " + file);
+        }
+        
+        ByteBuffer header = read(channel, localHeaderOffset, LOC_HEADER_SIZE);
+        
+        if (header.getInt(0) != LOC_SIGNATURE)
+        {
+            throw new ZipException("Invalid local header in " + file);
+        }
+        
+        //  Local extra field may differ from the one in the central directory
+        long dataOffset = localHeaderOffset + LOC_HEADER_SIZE
+                        + (header.getShort(26) & 0xFFFF)
+                        + (header.getShort(28) & 0xFFFF);
+        
+        if (method == STORED)
+        {
+            ByteBuffer data = read(channel, dataOffset, (int) size);
+            return data.array();
+        }
+        
+        if (method != DEFLATED)
+        {
+            throw new ZipException("Unsupported compression method " + method + " in " + file);
+        }
+        
+        //  Inflater in 'nowrap' mode may need one extra byte of input
+        byte[] input = new byte[(int) compressedSize + 1];
+        ByteBuffer buffer = ByteBuffer.wrap(input, 0, (int) compressedSize);
+        readFully(channel, buffer, dataOffset);
+        
+        Inflater inflater = new Inflater(true);
+        
+        try
+        {
+            inflater.setInput(input);
+            
+            byte[] output = new byte[(int) size];
+            
+            int length = 0;
+            
+            while (length < output.length && !inflater.finished())
+            {
+                int count = inflater.inflate(output, length, output.length - length);
+                
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new ZipException("Unexpected end of entry data in " + file);
+                }
+                
+                length += count;
+            }
+            
+            return output;
+        }
+        catch (DataFormatException e)
+        {
+            ZipException exception = new ZipException("Invalid entry data in " + file);
+            exception.initCause(e);
+            throw exception;
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+    
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        
+        readFully(channel, buffer, position);
+        
+        buffer.flip();
+        
+        return buffer;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int count = channel.read(buffer, position);
+            
+            if (count < 0)
+            {
+                throw new ZipException("Unexpected end of file");
+            }
+            
+            position += count;
+        }
+    }
+    
+    private static boolean equals(byte[] name, byte[] target)
+    {
+        for (int i = 0; i < target.length; i++)
+        {
+            if (name[i] != target[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static byte[] toBytes(String entryName)
+    {
+        try
+        {
+            return entryName.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
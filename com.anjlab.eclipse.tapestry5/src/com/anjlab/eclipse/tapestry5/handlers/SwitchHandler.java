@@ -39,11 +39,14 @@ public class SwitchHandler extends AbstractHandler
             //  Create new context from window (this includes search in Package Explorer)
             //  Activator#getTapestryContext() only holds context for ActivePage,
             //  so we can't use it here
-            TapestryContext tapestryContext = TapestryUtils.createTapestryContext(window);
+            TapestryFile currentFile = TapestryUtils.getTapestryFile(window);
+            
+            TapestryContext tapestryContext = currentFile != null
+                                            ? currentFile.getContext()
+                                            : TapestryContext.emptyContext();
             
             if (!tapestryContext.isEmpty())
             {
-                TapestryFile currentFile = tapestryContext.getInitialFile();
                 
                 TapestryFile switchTarget = null;
                 
@@ -0,0 +1,224 @@
+package com.anjlab.eclipse.tapestry5.hyperlink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.hyperlink.AbstractHyperlinkDetector;
+import org.eclipse.jface.text.hyperlink.IHyperlink;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
+
+import com.anjlab.eclipse.tapestry5.Activator;
+import com.anjlab.eclipse.tapestry5.EclipseUtils;
+import com.anjlab.eclipse.tapestry5.MessageCatalogIndex.Message;
+import com.anjlab.eclipse.tapestry5.TapestryContext;
+import com.anjlab.eclipse.tapestry5.TapestryProject;
+import com.anjlab.eclipse.tapestry5.TapestryUtils;
+import com.anjlab.eclipse.tapestry5.TemplateTokenizer;
+import com.anjlab.eclipse.tapestry5.TemplateTokenizer.TokenType;
+
+/**
+ * Links message keys of <code>message:</code> bindings and <code>${message:...}</code> expansions
+ * to their properties files in all locales, and to the properties files that miss the key.
+ */
+public class MessageHyperlinkDetector extends AbstractHyperlinkDetector
+{
+    private static final String MESSAGE_PREFIX = "message";
+    
+    @Override
+    public IHyperlink[] detectHyperlinks(ITextViewer textViewer, IRegion region, boolean canShowMultipleHyperlinks)
+    {
+        final IRegion keyRegion = getMessageKeyRegion(textViewer, region);
+        
+        if (keyRegion == null)
+        {
+            return null;
+        }
+        
+        String key;
+        try
+        {
+            key = textViewer.getDocument().get(keyRegion.getOffset(), keyRegion.getLength());
+        }
+        catch (BadLocationException e)
+        {
+            return null;
+        }
+        
+        IWorkbenchWindow window = TapestryUtils.getWorkbenchWindow(textViewer.getTextWidget().getShell());
+        
+        if (window == null)
+        {
+            return null;
+        }
+        
+        TapestryContext context = Activator.getDefault().getTapestryContext(window);
+        TapestryProject project = Activator.getDefault().getTapestryProject(window);
+        
+        if (context == null || project == null)
+        {
+            return null;
+        }
+        
+        List<IHyperlink> links = new ArrayList<IHyperlink>();
+        
+        for (Message message : project.findMessages(context, key))
+        {
+            links.add(new FileHyperlink(keyRegion, message.getFile(),
+                    message.getFile().getName() + ": " + message.getValue(), message.getOffset(), message.getLength()));
+        }
+        
+        for (IFile file : project.findFilesMissingMessage(context, key))
+        {
+            links.add(new FileHyperlink(keyRegion, file, "Missing in " + file.getName(), 0, 0));
+        }
+        
+        return links.isEmpty() ? null : links.toArray(new IHyperlink[links.size()]);
+    }
+    
+    private static class FileHyperlink implements IHyperlink
+    {
+        private final IRegion region;
+        private final IFile file;
+        private final String text;
+        private final int offset;
+        private final int length;
+        
+        public FileHyperlink(IRegion region, IFile file, String text, int offset, int length)
+        {
+            this.region = region;
+            this.file = file;
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        @Override
+        public void open()
+        {
+            EclipseUtils.openFile(PlatformUI.getWorkbench().getActiveWorkbenchWindow(), file, offset, length);
+        }
+        
+        @Override
+        public String getTypeLabel()
+        {
+            return file.getName();
+        }
+        
+        @Override
+        public String getHyperlinkText()
+        {
+            return text;
+        }
+        
+        @Override
+        public IRegion getHyperlinkRegion()
+        {
+            return region;
+        }
+    }
+    
+    protected IRegion getMessageKeyRegion(ITextViewer textViewer, IRegion region)
+    {
+        if (region == null || textViewer == null)
+        {
+            return null;
+        }
+        
+        IDocument document = textViewer.getDocument();
+        
+        if (document == null || document.getLength() == 0)
+        {
+            return null;
+        }
+        
+        try
+        {
+            if (document.getChar(0) != '<')
+            {
+                //  Not a template, see TapestryComponentHyperlinkDetector
+                return null;
+            }
+        }
+        catch (BadLocationException e)
+        {
+            return null;
+        }
+        
+        final int offset = region.getOffset();
+        
+        final String text = document.get();
+        
+        final IRegion[] keyRegion = new IRegion[1];
+        
+        final TemplateTokenizer tokenizer = new TemplateTokenizer(text);
+        
+        tokenizer.tokenize(new TemplateTokenizer.Handler()
+        {
+            //  End of the attribute value or expansion the binding prefix belongs to
+            private int valueEnd;
+            
+            @Override
+            public void token(TokenType type, int start, int end)
+            {
+                if (offset < start)
+                {
+                    //  Key at the offset follows its binding prefix, which starts before the offset
+                    tokenizer.stop();
+                    return;
+                }
+                
+                switch (type)
+                {
+                case ATTRIBUTE_VALUE:
+                case EXPANSION:
+                    
+                    valueEnd = end;
+                    break;
+                
+                case BINDING_PREFIX:
+                    
+                    //  <t:outputraw value="message:key"/>
+                    //  ${message:key}
+                    if (!MESSAGE_PREFIX.equals(text.substring(start, end)))
+                    {
+                        break;
+                    }
+                    
+                    int keyStart = end + 1;
+                    int keyEnd = valueEnd;
+                    
+                    while (keyStart < keyEnd && Character.isWhitespace(text.charAt(keyStart)))
+                    {
+                        keyStart++;
+                    }
+                    
+                    while (keyEnd > keyStart && Character.isWhitespace(text.charAt(keyEnd - 1)))
+                    {
+                        keyEnd--;
+                    }
+                    
+                    if (keyStart < keyEnd && offset >= keyStart && offset <= keyEnd)
+                    {
+                        keyRegion[0] = new Region(keyStart, keyEnd - keyStart);
+                        
+                        tokenizer.stop();
+                    }
+                    break;
+                
+                default:
+                    
+                    break;
+                }
+            }
+        });
+        
+        return keyRegion[0];
+    }
+}
@@ -16,6 +16,8 @@ import com.anjlab.eclipse.tapestry5.EclipseUtils;
 import com.anjlab.eclipse.tapestry5.TapestryContext;
 import com.anjlab.eclipse.tapestry5.TapestryFile;
 import com.anjlab.eclipse.tapestry5.TapestryUtils;
+import com.anjlab.eclipse.tapestry5.TemplateTokenizer;
+import com.anjlab.eclipse.tapestry5.TemplateTokenizer.TokenType;
 
 public class TapestryComponentHyperlinkDetector extends AbstractHyperlinkDetector
 {
@@ -102,8 +104,6 @@ public class TapestryComponentHyperlinkDetector extends AbstractHyperlinkDetecto
 
         IDocument document = textViewer.getDocument();
 
-        int offset = region.getOffset();
-
         if (document == null)
         {
             return null;
@@ -114,72 +114,69 @@ public class TapestryComponentHyperlinkDetector extends AbstractHyperlinkDetecto
             return null;
         }
         
-        IRegion lineInfo;
-        String line;
-        try
-        {
-            lineInfo = document.getLineInformationOfOffset(offset);
-            line = document.get(lineInfo.getOffset(), lineInfo.getLength());
-        }
-        catch (BadLocationException ex)
-        {
-            return null;
-        }
-        
-        int offsetInLine = offset - lineInfo.getOffset();
+        final int offset = region.getOffset();
         
-        if (offsetInLine >= line.length())
-        {
-            return null;
-        }
-        
-        char ch = line.charAt(offsetInLine);
-        
-        if (!isValidCharForComponentReference(ch))
-        {
-            return null;
-        }
+        final String text = document.get();
         
-        int leftIndex = offsetInLine;
-        int rightIndex = offsetInLine;
-        
-        while (leftIndex > 0 && isValidCharForComponentReference(line.charAt(leftIndex - 1)))
-        {
-            leftIndex--;
-        }
-        
-        while (rightIndex + 1 < line.length() && isValidCharForComponentReference(line.charAt(rightIndex + 1)))
-        {
-            rightIndex++;
-        }
-        
-        String text = line.substring(leftIndex, rightIndex + 1);
-        
-        if (!isValidLocationForComponentName(line, leftIndex, rightIndex))
-        {
-            return null;
-        }
-        
-        int leftOffset = 0;
-        int rightOffset = 0;
-        
-        //  <t:alerts/>
-        //           ^
-        if (text.endsWith("/"))
-        {
-            rightOffset = 1;
-        }
+        final IRegion[] componentRegion = new IRegion[1];
         
-        final int componentOffset = lineInfo.getOffset() + leftIndex + leftOffset;
+        final TemplateTokenizer tokenizer = new TemplateTokenizer(text);
         
-        if (offsetInLine < leftIndex + leftOffset || offsetInLine >= rightIndex - rightOffset)
+        tokenizer.tokenize(new TemplateTokenizer.Handler()
         {
-            return null;
-        }
-        
-        final String componentName = text.substring(leftOffset, text.length() - rightOffset);
+            @Override
+            public void token(TokenType type, int start, int end)
+            {
+                if (offset < start)
+                {
+                    //  This and the following tokens are after the offset
+                    tokenizer.stop();
+                    return;
+                }
+                
+                if (offset >= end)
+                {
+                    return;
+                }
+                
+                switch (type)
+                {
+                case START_TAG:
+                case END_TAG:
+                    
+                    //  <t:component
+                    //    ^
+                    //  <component xmlns="http://tapestry.apache.org/schema/tapestry_5_3.xsd"
+                    //   ^
+                    int colon = text.lastIndexOf(':', end - 1);
+                    
+                    if (colon >= start)
+                    {
+                        start = colon + 1;
+                    }
+                    break;
+                
+                case ATTRIBUTE_VALUE:
+                    
+                    //  <div t:type='component'
+                    //               ^
+                    break;
+                
+                default:
+                    
+                    return;
+                }
+                
+                if (offset >= start && isComponentReference(text, start, end))
+                {
+                    componentRegion[0] = new Region(start, end - start);
+                    
+                    tokenizer.stop();
+                }
+            }
+        });
         
-        return new Region(componentOffset, componentName.length());
+        return componentRegion[0];
     }
 
     protected boolean isTapestryTemplate(IDocument document)
@@ -199,44 +196,22 @@ public class TapestryComponentHyperlinkDetector extends AbstractHyperlinkDetecto
         return false;
     }
 
-    private boolean isValidLocationForComponentName(String line, int leftIndex, int rightIndex)
+    private boolean isComponentReference(String text, int start, int end)
     {
-        if (leftIndex <= 0)
+        if (start >= end)
         {
             return false;
         }
         
-        char leftChar = line.charAt(leftIndex - 1);
-        
-        //  <t:component
-        //    ^
-        if (leftChar == ':')
-        {
-            return true;
-        }
-        
-        //  <component xmlns="http://tapestry.apache.org/schema/tapestry_5_3.xsd"
-        //  ^
-        if (leftChar == '<')
-        {
-            return true;
-        }
-        
-        if (rightIndex + 1 >= line.length())
+        for (int i = start; i < end; i++)
         {
-            return false;
-        }
-        
-        char rightChar = line.charAt(rightIndex + 1);
-        
-        //  <div t:type='component'
-        //              ^         ^
-        if ((leftChar == '"' && rightChar == '"') || (leftChar == '\'' && rightChar == '\''))
-        {
-            return true;
+            if (!isValidCharForComponentReference(text.charAt(i)))
+            {
+                return false;
+            }
         }
         
-        return false;
+        return true;
     }
 
     private boolean isValidCharForComponentReference(char ch)
@@ -11,6 +11,8 @@ import org.eclipse.ui.PlatformUI;
 import com.anjlab.eclipse.tapestry5.AssetException;
 import com.anjlab.eclipse.tapestry5.AssetReference;
 import com.anjlab.eclipse.tapestry5.ClassFile;
+import com.anjlab.eclipse.tapestry5.ComponentIndex;
+import com.anjlab.eclipse.tapestry5.ComponentUsageIndex.Usage;
 import com.anjlab.eclipse.tapestry5.TapestryFile;
 import com.anjlab.eclipse.tapestry5.TapestryModule;
 
@@ -38,6 +40,15 @@ public class ViewLabelProvider extends LabelProvider
             {
                 return getImageDescriptor((TapestryFile) data);
             }
+            else if (data instanceof Usage)
+            {
+                return PlatformUI.getWorkbench().getEditorRegistry().getImageDescriptor(((Usage) data).getFile().getName());
+            }
+            else if (data instanceof ComponentIndex.Entry)
+            {
+                return PlatformUI.getWorkbench().getEditorRegistry().getImageDescriptor(
+                        ((ComponentIndex.Entry) data).getElement().getElementName());
+            }
             else if (data instanceof TapestryModule)
             {
                 TapestryFile moduleFile = ((TapestryModule) data).getModuleFile();
@@ -1,21 +1,34 @@
 package com.anjlab.eclipse.tapestry5.views.context;
 
+import java.util.List;
+
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.ui.IViewSite;
 
+import com.anjlab.eclipse.tapestry5.ComponentIndex;
+import com.anjlab.eclipse.tapestry5.ComponentUsageIndex.Usage;
 import com.anjlab.eclipse.tapestry5.TapestryContext;
 import com.anjlab.eclipse.tapestry5.TapestryFile;
+import com.anjlab.eclipse.tapestry5.TapestryProject;
 import com.anjlab.eclipse.tapestry5.views.TreeObject;
 import com.anjlab.eclipse.tapestry5.views.TreeParent;
 
 public class TapestryContextContentProvider implements ITreeContentProvider
 {
+    //  Nodes are compared by name and data, constant data keeps them expanded when the usages are refreshed
+    private static final String USED_BY = "Used by";
+    private static final String USES = "Uses";
+    
     private TreeParent invisibleRoot;
+    private TreeParent usagesRoot;
+    private TreeParent usesRoot;
+    private TapestryProject project;
     private TapestryContext context;
 
-    public TapestryContextContentProvider(TapestryContext context)
+    public TapestryContextContentProvider(TapestryProject project, TapestryContext context)
     {
+        this.project = project;
         this.context = context;
     }
 
@@ -29,8 +42,78 @@ public class TapestryContextContentProvider implements ITreeContentProvider
             {
                 invisibleRoot.addChild(new TreeObject(relatedFile.getName(), relatedFile));
             }
+            
+            if (project != null)
+            {
+                addUsages();
+            }
+        }
+    }
+    
+    /**
+     * Replaces "Used by" and "Uses" nodes with the current usages of the context.
+     */
+    public void refreshUsages()
+    {
+        if (invisibleRoot == null)
+        {
+            //  Not shown yet
+            return;
+        }
+        
+        if (usagesRoot != null)
+        {
+            invisibleRoot.removeChild(usagesRoot);
+            usagesRoot = null;
+        }
+        
+        if (usesRoot != null)
+        {
+            invisibleRoot.removeChild(usesRoot);
+            usesRoot = null;
+        }
+        
+        if (context != null && project != null)
+        {
+            addUsages();
         }
     }
+    
+    private void addUsages()
+    {
+        List<Usage> usages = project.findUsages(context);
+        
+        if (!usages.isEmpty())
+        {
+            usagesRoot = new TreeParent(USED_BY, USED_BY);
+            
+            invisibleRoot.addChild(usagesRoot);
+            
+            for (Usage usage : usages)
+            {
+                usagesRoot.addChild(new TreeObject(usage.toString(), usage));
+            }
+        }
+        
+        List<ComponentIndex.Entry> uses = project.findUses(context);
+        
+        if (!uses.isEmpty())
+        {
+            usesRoot = new TreeParent(USES, USES);
+            
+            invisibleRoot.addChild(usesRoot);
+            
+            for (ComponentIndex.Entry entry : uses)
+            {
+                usesRoot.addChild(new TreeObject(entry.getName(), entry));
+            }
+        }
+    }
+    
+    public TapestryProject getProject()
+    {
+        return project;
+    }
 
     public TapestryContext getContext()
     {
@@ -13,6 +13,8 @@ import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.part.ViewPart;
 
 import com.anjlab.eclipse.tapestry5.Activator;
+import com.anjlab.eclipse.tapestry5.ComponentIndex;
+import com.anjlab.eclipse.tapestry5.ComponentUsageIndex.Usage;
 import com.anjlab.eclipse.tapestry5.EclipseUtils;
 import com.anjlab.eclipse.tapestry5.ITapestryContextListener;
 import com.anjlab.eclipse.tapestry5.TapestryContext;
@@ -52,7 +54,9 @@ public class TapestryContextView extends ViewPart
     public void createPartControl(Composite parent)
     {
         viewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
-        viewer.setContentProvider(new TapestryContextContentProvider(Activator.getDefault().getTapestryContext(getSite().getWorkbenchWindow())));
+        viewer.setContentProvider(new TapestryContextContentProvider(
+                Activator.getDefault().getTapestryProject(getSite().getWorkbenchWindow()),
+                Activator.getDefault().getTapestryContext(getSite().getWorkbenchWindow())));
         viewer.setLabelProvider(new ViewLabelProvider());
         viewer.setInput(getViewSite());
         viewer.addDoubleClickListener(new IDoubleClickListener()
@@ -63,11 +67,39 @@ public class TapestryContextView extends ViewPart
                 
                 Object obj = ((IStructuredSelection) selection).getFirstElement();
                 
-                if (obj instanceof TreeObject)
+                if (!(obj instanceof TreeObject))
                 {
-                    TapestryFile file = (TapestryFile) ((TreeObject) obj).getData();
+                    return;
+                }
+                
+                Object data = ((TreeObject) obj).getData();
+                
+                if (data instanceof TapestryFile)
+                {
+                    EclipseUtils.openFile(getViewSite().getWorkbenchWindow(), (TapestryFile) data);
+                }
+                else if (data instanceof Usage)
+                {
+                    Usage usage = (Usage) data;
                     
-                    EclipseUtils.openFile(getViewSite().getWorkbenchWindow(), file);
+                    EclipseUtils.openFile(getViewSite().getWorkbenchWindow(), usage.getFile(), usage.getOffset(), usage.getLength());
+                }
+                else if (data instanceof ComponentIndex.Entry)
+                {
+                    TapestryContext context = ((ComponentIndex.Entry) data).createContext();
+                    
+                    //  Context may be shared with the template, open the class
+                    TapestryFile file = context != null ? context.getJavaFile() : null;
+                    
+                    if (file == null && context != null)
+                    {
+                        file = context.getInitialFile();
+                    }
+                    
+                    if (file != null)
+                    {
+                        EclipseUtils.openFile(getViewSite().getWorkbenchWindow(), file);
+                    }
                 }
             }
         });
@@ -75,14 +107,15 @@ public class TapestryContextView extends ViewPart
         tapestryContextListener = new ITapestryContextListener()
         {
             @Override
-            public void contextChanged(IWorkbenchWindow window, final TapestryContext newContext)
+            public void contextChanged(final IWorkbenchWindow window, final TapestryContext newContext)
             {
                 window.getShell().getDisplay().syncExec(new Runnable()
                 {
                     @Override
                     public void run()
                     {
-                        viewer.setContentProvider(new TapestryContextContentProvider(newContext));
+                        viewer.setContentProvider(new TapestryContextContentProvider(
+                                Activator.getDefault().getTapestryProject(window), newContext));
                     }
                 });
             }
@@ -97,12 +130,60 @@ public class TapestryContextView extends ViewPart
             }
             
             @Override
-            public void projectChanged(IWorkbenchWindow window, TapestryProject newTapestryProject) { }
+            public void projectChanged(IWorkbenchWindow window, final TapestryProject newTapestryProject)
+            {
+                window.getShell().getDisplay().syncExec(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        TapestryContextContentProvider contentProvider =
+                                (TapestryContextContentProvider) viewer.getContentProvider();
+                        
+                        if (contentProvider.getProject() == newTapestryProject)
+                        {
+                            //  Usages of the current context may have changed
+                            refreshUsages();
+                        }
+                        else
+                        {
+                            viewer.setContentProvider(new TapestryContextContentProvider(
+                                    newTapestryProject, contentProvider.getContext()));
+                        }
+                    }
+                });
+            }
+            
+            @Override
+            public void indexesChanged(IWorkbenchWindow window, TapestryProject tapestryProject)
+            {
+                window.getShell().getDisplay().syncExec(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        refreshUsages();
+                    }
+                });
+            }
         };
         
         Activator.getDefault().addTapestryContextListener(getViewSite().getWorkbenchWindow(), tapestryContextListener);
     }
     
+    private void refreshUsages()
+    {
+        if (viewer.getControl().isDisposed())
+        {
+            return;
+        }
+        
+        ((TapestryContextContentProvider) viewer.getContentProvider()).refreshUsages();
+        
+        //  Keeps expanded nodes, unlike replacing the content provider
+        viewer.refresh();
+    }
+    
     @Override
     public void dispose()
     {
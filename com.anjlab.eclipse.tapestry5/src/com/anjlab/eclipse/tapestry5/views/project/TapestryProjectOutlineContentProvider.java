@@ -45,12 +45,13 @@ public class TapestryProjectOutlineContentProvider implements ITreeContentProvid
                 
                 modulesRoot.addChild(moduleRoot);
                 
-                if (module.isSourceAvailable())
+                try
                 {
-                    try
+                    List<LibraryMapping> libraryMappings = module.libraryMappings();
+                    
+                    //  Mappings of modules without sources are read from bytecode
+                    if (module.isSourceAvailable() || !libraryMappings.isEmpty())
                     {
-                        List<LibraryMapping> libraryMappings = module.libraryMappings();
-                        
                         TreeParent mappingsRoot = newLibraryMappingNode(moduleRoot, new Object());
                         
                         for (LibraryMapping libraryMapping : libraryMappings)
@@ -59,14 +60,14 @@ public class TapestryProjectOutlineContentProvider implements ITreeContentProvid
                             mappingsRoot.addChild(new TreeObject("".equals(pathPrefix) ? "(default)" : pathPrefix, libraryMapping));
                         }
                     }
-                    catch (JavaModelException e)
+                    else
                     {
-                        newLibraryMappingNode(moduleRoot, e);
+                        newLibraryMappingNode(moduleRoot, EclipseUtils.SOURCE_NOT_FOUND);
                     }
                 }
-                else
+                catch (JavaModelException e)
                 {
-                    newLibraryMappingNode(moduleRoot, EclipseUtils.SOURCE_NOT_FOUND);
+                    newLibraryMappingNode(moduleRoot, e);
                 }
             }
         }
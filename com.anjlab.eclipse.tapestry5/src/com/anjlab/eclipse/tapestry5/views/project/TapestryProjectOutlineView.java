@@ -107,6 +107,9 @@ public class TapestryProjectOutlineView extends ViewPart
             
             @Override
             public void selectionChanged(IWorkbenchWindow window, TapestryFile selectedFile) { }
+            
+            @Override
+            public void indexesChanged(IWorkbenchWindow window, TapestryProject tapestryProject) { }
         };
         
         Activator.getDefault().addTapestryProjectListener(getViewSite().getWorkbenchWindow(), tapestryContextListener);
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchWindow;
 
 import com.anjlab.eclipse.tapestry5.ITapestryContextListener;
@@ -49,5 +50,15 @@ public class AbstractTapestryWatchdog extends AbstractWatchdog
             listeners.remove(listener);
         }
     }
+    
+    protected void asyncExec(IWorkbenchWindow window, Runnable runnable)
+    {
+        Shell shell = window.getShell();
+        
+        if (shell != null && !shell.isDisposed())
+        {
+            shell.getDisplay().asyncExec(runnable);
+        }
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package com.anjlab.eclipse.tapestry5.watchdog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.anjlab.eclipse.tapestry5.Activator;
+import com.anjlab.eclipse.tapestry5.ProjectTopology;
+
+/**
+ * Keeps {@link ProjectTopology} of the projects, dropping them when the class path,
+ * the project description, the project settings or the web application context roots change.
+ */
+public class ProjectTopologyWatchdog extends AbstractWatchdog
+{
+    private static final IPath PROJECT_DESCRIPTION = new Path(".project");
+    
+    private final Map<IProject, ProjectTopology> topologies = new ConcurrentHashMap<IProject, ProjectTopology>();
+    
+    //  Incremented on every invalidation, so that topologies computed concurrently with it are not cached
+    private long generation;
+    
+    private IElementChangedListener elementChangedListener;
+    
+    private IResourceChangeListener resourceChangeListener;
+    
+    @Override
+    public void start()
+    {
+        super.start();
+        
+        elementChangedListener = new IElementChangedListener()
+        {
+            @Override
+            public void elementChanged(ElementChangedEvent event)
+            {
+                for (IJavaElementDelta delta : event.getDelta().getAffectedChildren())
+                {
+                    if (delta.getElement().getElementType() != IJavaElement.JAVA_PROJECT)
+                    {
+                        continue;
+                    }
+                    
+                    if (delta.getKind() != IJavaElementDelta.CHANGED
+                            || (delta.getFlags() & (IJavaElementDelta.F_CLASSPATH_CHANGED
+                                                  | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+                                                  | IJavaElementDelta.F_OPENED
+                                                  | IJavaElementDelta.F_CLOSED)) != 0)
+                    {
+                        //  Projects also see source folders of the projects they depend on
+                        invalidateAll();
+                        return;
+                    }
+                }
+            }
+        };
+        
+        JavaCore.addElementChangedListener(elementChangedListener, ElementChangedEvent.POST_CHANGE);
+        
+        resourceChangeListener = new IResourceChangeListener()
+        {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event)
+            {
+                if (event.getType() != IResourceChangeEvent.POST_CHANGE)
+                {
+                    if (event.getResource() instanceof IProject)
+                    {
+                        invalidate((IProject) event.getResource());
+                    }
+                    return;
+                }
+                
+                try
+                {
+                    event.getDelta().accept(new IResourceDeltaVisitor()
+                    {
+                        @Override
+                        public boolean visit(IResourceDelta delta) throws CoreException
+                        {
+                            IResource resource = delta.getResource();
+                            
+                            if (resource.getType() == IResource.ROOT)
+                            {
+                                return true;
+                            }
+                            
+                            ProjectTopology topology = topologies.get(resource.getProject());
+                            
+                            if (topology == null)
+                            {
+                                //  Nothing to invalidate in this project
+                                return false;
+                            }
+                            
+                            if (resource.getType() == IResource.FILE)
+                            {
+                                IPath path = resource.getProjectRelativePath();
+                                
+                                if (PROJECT_DESCRIPTION.equals(path) || ProjectTopology.SETTINGS_PATH.equals(path))
+                                {
+                                    invalidate(resource.getProject());
+                                }
+                                return false;
+                            }
+                            
+                            if ((delta.getKind() == IResourceDelta.ADDED || delta.getKind() == IResourceDelta.REMOVED)
+                                    && topology.isAffectedBy(resource.getFullPath()))
+                            {
+                                invalidate(resource.getProject());
+                                return false;
+                            }
+                            
+                            return true;
+                        }
+                    });
+                }
+                catch (CoreException e)
+                {
+                    Activator.getDefault().logError("Error processing resource delta", e);
+                    
+                    invalidateAll();
+                }
+            }
+        };
+        
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceChangeListener,
+                IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+    }
+    
+    @Override
+    public void stop()
+    {
+        JavaCore.removeElementChangedListener(elementChangedListener);
+        elementChangedListener = null;
+        
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceChangeListener);
+        resourceChangeListener = null;
+        
+        topologies.clear();
+        
+        super.stop();
+    }
+    
+    private synchronized void invalidate(IProject project)
+    {
+        generation++;
+        
+        topologies.remove(project);
+    }
+    
+    private synchronized void invalidateAll()
+    {
+        generation++;
+        
+        topologies.clear();
+    }
+    
+    public ProjectTopology getProjectTopology(IProject project)
+    {
+        ProjectTopology topology = topologies.get(project);
+        
+        if (topology == null)
+        {
+            long generation;
+            
+            synchronized (this)
+            {
+                generation = this.generation;
+            }
+            
+            //  Concurrent callers may compute it twice, that's cheaper than holding a lock over the Java model
+            topology = ProjectTopology.create(project);
+            
+            synchronized (this)
+            {
+                //  Don't keep the topology if it could have been computed from the old class path
+                if (generation == this.generation)
+                {
+                    topologies.put(project, topology);
+                }
+            }
+        }
+        
+        return topology;
+    }
+}
@@ -1,5 +1,6 @@
 package com.anjlab.eclipse.tapestry5.watchdog;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -10,11 +11,20 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.ISelectionListener;
 import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.IWorkbenchWindow;
 
+import com.anjlab.eclipse.tapestry5.Activator;
 import com.anjlab.eclipse.tapestry5.EclipseUtils;
 import com.anjlab.eclipse.tapestry5.ITapestryContextListener;
 import com.anjlab.eclipse.tapestry5.TapestryContext;
@@ -23,17 +33,159 @@ import com.anjlab.eclipse.tapestry5.TapestryUtils;
 
 public class TapestryContextWatchdog extends AbstractTapestryWatchdog
 {
+    //  Selection changes come in bursts when moving through the Package Explorer with arrow keys
+    private static final long SELECTION_DELAY = 150;
+    
     private WindowSelectionListener windowListener;
     
     private IResourceChangeListener postBuildListener;
     
     private IResourceChangeListener postChangeListener;
+    
+    private IElementChangedListener elementChangedListener;
 
     private final Map<IWorkbenchWindow, TapestryContext> currentContexts;
     
+    private final Map<IWorkbenchWindow, ResolveContextJob> resolveJobs;
+    
     public TapestryContextWatchdog()
     {
         currentContexts = new ConcurrentHashMap<IWorkbenchWindow, TapestryContext>();
+        resolveJobs = new HashMap<IWorkbenchWindow, ResolveContextJob>();
+    }
+    
+    /**
+     * Creates context of the active editor of the window in background and publishes it from UI thread.
+     * Each window has its own job, and only the latest request of the window is published.
+     */
+    private class ResolveContextJob extends Job
+    {
+        private final IWorkbenchWindow window;
+        
+        //  Guarded by resolveJobs
+        private IEditorInput editorInput;
+        private long requestId;
+        
+        public ResolveContextJob(IWorkbenchWindow window)
+        {
+            super(EclipseUtils.ECLIPSE_INTEGRATION_FOR_TAPESTRY5);
+            
+            this.window = window;
+        }
+        
+        private boolean isLatest(long requestId)
+        {
+            synchronized (resolveJobs)
+            {
+                return resolveJobs.get(window) == this && this.requestId == requestId;
+            }
+        }
+        
+        @Override
+        protected IStatus run(IProgressMonitor monitor)
+        {
+            IEditorInput editorInput;
+            final long requestId;
+            
+            synchronized (resolveJobs)
+            {
+                editorInput = this.editorInput;
+                requestId = this.requestId;
+            }
+            
+            final TapestryFile selectedFile = TapestryUtils.getTapestryFileFromEditorInput(editorInput);
+            
+            if (selectedFile == null)
+            {
+                return Status.OK_STATUS;
+            }
+            
+            if (monitor.isCanceled() || !isLatest(requestId))
+            {
+                return Status.CANCEL_STATUS;
+            }
+            
+            TapestryContext context = currentContexts.get(window);
+            
+            if (context == null || !context.contains(selectedFile))
+            {
+                context = selectedFile.getContext();
+            }
+            
+            final TapestryContext newContext = context;
+            
+            asyncExec(window, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    //  Selection changed again while this context was on its way to UI thread
+                    if (!isLatest(requestId))
+                    {
+                        return;
+                    }
+                    
+                    //  In case if we clicked on some file and couldn't obtain tapestry context
+                    //  for the file (i.e. because it doesn't follow naming conventions, or this is not a tapestry file)
+                    //  we simply keep showing the previous context
+                    
+                    if (!newContext.isEmpty())
+                    {
+                        changeContext(window, newContext);
+                    }
+                    
+                    notifySelectionChanged(window, selectedFile);
+                }
+            });
+            
+            return Status.OK_STATUS;
+        }
+    }
+    
+    private void resolveContext(IWorkbenchWindow window, IEditorInput editorInput)
+    {
+        ResolveContextJob job;
+        
+        synchronized (resolveJobs)
+        {
+            job = resolveJobs.get(window);
+            
+            if (job == null)
+            {
+                job = new ResolveContextJob(window);
+                
+                //  Runs on every selection change, shouldn't show up in the Progress view
+                job.setSystem(true);
+                
+                resolveJobs.put(window, job);
+            }
+            
+            job.editorInput = editorInput;
+            job.requestId++;
+        }
+        
+        //  Drop the previous request if it's still waiting, or ask it to stop if it's running,
+        //  in the latter case the job runs once more for this request when it finishes
+        job.cancel();
+        job.schedule(SELECTION_DELAY);
+    }
+    
+    private void forgetWindow(IWorkbenchWindow window)
+    {
+        ResolveContextJob job;
+        
+        synchronized (resolveJobs)
+        {
+            job = resolveJobs.remove(window);
+        }
+        
+        if (job != null)
+        {
+            //  Running job won't publish its context, it's not the latest for the window anymore
+            job.cancel();
+        }
+        
+        currentContexts.remove(window);
     }
     
     private void notifyContextChanged(IWorkbenchWindow targetWindow, TapestryContext newContext)
@@ -88,6 +240,9 @@ public class TapestryContextWatchdog extends AbstractTapestryWatchdog
             @Override
             public void resourceChanged(IResourceChangeEvent event)
             {
+                //  Contexts created below should not come from the cache
+                Activator.getDefault().getTapestryContextCache().resourceChanged(event.getDelta());
+                
                 for (IFile affectedFile : EclipseUtils.getAllAffectedResources(
                                             event.getDelta(), IFile.class))
                 {
@@ -125,6 +280,18 @@ public class TapestryContextWatchdog extends AbstractTapestryWatchdog
         
         ResourcesPlugin.getWorkspace().addResourceChangeListener(postChangeListener, IResourceChangeEvent.POST_CHANGE);
         
+        elementChangedListener = new IElementChangedListener()
+        {
+            @Override
+            public void elementChanged(ElementChangedEvent event)
+            {
+                Activator.getDefault().getImportCache().elementChanged(event.getDelta());
+                Activator.getDefault().getArchiveClassIndexCache().elementChanged(event.getDelta());
+            }
+        };
+        
+        JavaCore.addElementChangedListener(elementChangedListener, ElementChangedEvent.POST_CHANGE);
+        
         postBuildListener = new IResourceChangeListener()
         {
             @Override
@@ -153,35 +320,26 @@ public class TapestryContextWatchdog extends AbstractTapestryWatchdog
             {
                 IWorkbenchWindow window = part.getSite().getWorkbenchWindow();
                 
-                TapestryFile selectedFile = TapestryUtils.getTapestryFileFromPage(window.getActivePage());
+                //  Context is created in background, Java model shouldn't be touched from UI thread
+                IEditorInput editorInput = TapestryUtils.getActiveEditorInput(window.getActivePage());
                 
-                if (selectedFile == null)
+                if (editorInput == null)
                 {
                     return;
                 }
                 
-                TapestryContext context = currentContexts.get(window);
-                
-                if (context == null || !context.contains(selectedFile))
-                {
-                    context = selectedFile.getContext();
-                }
-                
-                //  In case if we clicked on some file and couldn't obtain tapestry context
-                //  for the file (i.e. because it doesn't follow naming conventions, or this is not a tapestry file)
-                //  we simply keep showing the previous context
-                
-                if (!context.isEmpty())
-                {
-                    changeContext(window, context);
-                }
-                
-                if (selectedFile != null)
-                {
-                    notifySelectionChanged(window, selectedFile);
-                }
+                resolveContext(window, editorInput);
             }
         })
+        {
+            @Override
+            public void windowClosed(IWorkbenchWindow window)
+            {
+                super.windowClosed(window);
+                
+                forgetWindow(window);
+            }
+        }
         .addListener();
     }
     
@@ -191,9 +349,22 @@ public class TapestryContextWatchdog extends AbstractTapestryWatchdog
         windowListener.removeListener();
         windowListener = null;
         
+        synchronized (resolveJobs)
+        {
+            for (ResolveContextJob job : resolveJobs.values())
+            {
+                job.cancel();
+            }
+            
+            resolveJobs.clear();
+        }
+        
         ResourcesPlugin.getWorkspace().removeResourceChangeListener(postChangeListener);
         postChangeListener = null;
         
+        JavaCore.removeElementChangedListener(elementChangedListener);
+        elementChangedListener = null;
+        
         ResourcesPlugin.getWorkspace().removeResourceChangeListener(postBuildListener);
         postBuildListener = null;
         
@@ -1,14 +1,27 @@
 package com.anjlab.eclipse.tapestry5.watchdog;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.ui.ISelectionListener;
 import org.eclipse.ui.IWorkbenchPart;
@@ -17,20 +30,36 @@ import org.eclipse.ui.IWorkbenchWindow;
 import com.anjlab.eclipse.tapestry5.EclipseUtils;
 import com.anjlab.eclipse.tapestry5.ITapestryContextListener;
 import com.anjlab.eclipse.tapestry5.TapestryProject;
+import com.anjlab.eclipse.tapestry5.TapestryProjectRegistry;
 import com.anjlab.eclipse.tapestry5.TapestryUtils;
 
 public class TapestryProjectWatchdog extends AbstractTapestryWatchdog
 {
+    private static final long REFRESH_DELAY = 500;
+    
     private WindowSelectionListener windowListener;
     
+    private IElementChangedListener elementChangedListener;
+    
+    private IResourceChangeListener projectCloseListener;
+    
+    private IResourceChangeListener postChangeListener;
+    
     private final Map<IWorkbenchWindow, TapestryProject> currentProjects;
     
+    private final TapestryProjectRegistry projectRegistry;
+    
+    private final Map<TapestryProject, AnalyzeProjectJob> analysisJobs;
+    private final Map<TapestryProject, Job> refreshJobs;
+    
     public TapestryProjectWatchdog()
     {
-        currentProjects = new HashMap<IWorkbenchWindow, TapestryProject>();
+        currentProjects = new ConcurrentHashMap<IWorkbenchWindow, TapestryProject>();
+        projectRegistry = new TapestryProjectRegistry();
+        analysisJobs = new HashMap<TapestryProject, AnalyzeProjectJob>();
+        refreshJobs = new HashMap<TapestryProject, Job>();
     }
     
-    
     @Override
     public void start()
     {
@@ -41,14 +70,14 @@ public class TapestryProjectWatchdog extends AbstractTapestryWatchdog
             @Override
             public void selectionChanged(IWorkbenchPart part, ISelection selection)
             {
-                final IProject project = EclipseUtils.getProjectFromSelection(selection);
+                IProject project = EclipseUtils.getProjectFromSelection(selection);
                 
                 if (project == null)
                 {
                     return;
                 }
                 
-                final IWorkbenchWindow window = part.getSite().getWorkbenchWindow();
+                IWorkbenchWindow window = part.getSite().getWorkbenchWindow();
                 
                 TapestryProject tapestryProject = currentProjects.get(window);
                 
@@ -56,48 +85,361 @@ public class TapestryProjectWatchdog extends AbstractTapestryWatchdog
                         || (!tapestryProject.contains(project)
                                 && TapestryUtils.isTapestryAppProject(project)))
                 {
-                    final TapestryProject newTapestryProject = new TapestryProject(project);
+                    TapestryProject newTapestryProject = projectRegistry.acquire(project);
+                    
+                    if (newTapestryProject.isInitialized())
+                    {
+                        //  Model is already shared with another window
+                        supersedeAnalysis(window, newTapestryProject);
+                        changeProject(window, newTapestryProject);
+                        return;
+                    }
                     
-                    Job analyzeProject = new Job(EclipseUtils.ECLIPSE_INTEGRATION_FOR_TAPESTRY5)
+                    analyzeProject(window, newTapestryProject);
+                }
+            }
+        })
+        .addListener();
+        
+        elementChangedListener = new IElementChangedListener()
+        {
+            @Override
+            public void elementChanged(ElementChangedEvent event)
+            {
+                for (TapestryProject tapestryProject : projectRegistry.getTapestryProjects())
+                {
+                    if (tapestryProject.processDelta(event.getDelta()))
+                    {
+                        refreshProject(tapestryProject);
+                    }
+                }
+            }
+        };
+        
+        JavaCore.addElementChangedListener(elementChangedListener, ElementChangedEvent.POST_CHANGE);
+        
+        projectCloseListener = new IResourceChangeListener()
+        {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event)
+            {
+                if (!(event.getResource() instanceof IProject))
+                {
+                    return;
+                }
+                
+                TapestryProject evicted = projectRegistry.evict((IProject) event.getResource());
+                
+                if (evicted == null)
+                {
+                    return;
+                }
+                
+                synchronized (analysisJobs)
+                {
+                    analysisJobs.remove(evicted);
+                    refreshJobs.remove(evicted);
+                }
+                
+                Job.getJobManager().cancel(evicted);
+                
+                for (Entry<IWorkbenchWindow, TapestryProject> entry : currentProjects.entrySet())
+                {
+                    if (entry.getValue() == evicted)
                     {
-                        @Override
-                        protected IStatus run(IProgressMonitor monitor)
+                        final IWorkbenchWindow window = entry.getKey();
+                        
+                        currentProjects.remove(window);
+                        
+                        //  Workspace is locked by this thread, listeners may wait for the UI thread
+                        asyncExec(window, new Runnable()
                         {
-                            monitor.beginTask("Analyzing " + project.getName(), IProgressMonitor.UNKNOWN);
-                            monitor.worked(1);
-                            
-                            newTapestryProject.initialize(monitor);
-                            
-                            window.getShell().getDisplay().syncExec(new Runnable()
+                            @Override
+                            public void run()
                             {
-                                @Override
-                                public void run()
+                                //  Window may have switched to another project meanwhile
+                                if (!currentProjects.containsKey(window))
                                 {
-                                    changeProject(window, newTapestryProject);
+                                    notifyProjectChanged(window, null);
                                 }
-                            });
-                            
-                            return Status.OK_STATUS;
-                        }
-                    };
+                            }
+                        });
+                    }
+                }
+            }
+        };
+        
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(projectCloseListener,
+                IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+        
+        postChangeListener = new IResourceChangeListener()
+        {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event)
+            {
+                if (event.getDelta() == null)
+                {
+                    return;
+                }
+                
+                for (TapestryProject tapestryProject : projectRegistry.getTapestryProjects())
+                {
+                    if (tapestryProject.processResourceDelta(event.getDelta()))
+                    {
+                        refreshProject(tapestryProject);
+                    }
+                }
+            }
+        };
+        
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(postChangeListener, IResourceChangeEvent.POST_CHANGE);
+    }
+    
+    /**
+     * Analysis job of a project shared by all windows waiting for it.
+     * Jobs belong to the family of their {@link TapestryProject}.
+     */
+    private class AnalyzeProjectJob extends Job
+    {
+        private final TapestryProject tapestryProject;
+        
+        //  Guarded by analysisJobs
+        private final Set<IWorkbenchWindow> windows = new HashSet<IWorkbenchWindow>();
+        
+        public AnalyzeProjectJob(TapestryProject tapestryProject)
+        {
+            super(EclipseUtils.ECLIPSE_INTEGRATION_FOR_TAPESTRY5);
+            
+            this.tapestryProject = tapestryProject;
+        }
+        
+        @Override
+        public boolean belongsTo(Object family)
+        {
+            return family == tapestryProject;
+        }
+        
+        @Override
+        protected IStatus run(IProgressMonitor monitor)
+        {
+            monitor.beginTask("Analyzing " + tapestryProject.getProject().getName(), IProgressMonitor.UNKNOWN);
+            monitor.worked(1);
+            
+            try
+            {
+                tapestryProject.initialize(monitor);
+            }
+            catch (OperationCanceledException e)
+            {
+                //  Windows will schedule a new job if they select the project again
+                List<IWorkbenchWindow> windows = detachWindows();
+                
+                for (int i = 0; i < windows.size(); i++)
+                {
+                    projectRegistry.release(tapestryProject);
+                }
+                
+                return Status.CANCEL_STATUS;
+            }
+            finally
+            {
+                monitor.done();
+            }
+            
+            for (final IWorkbenchWindow window : detachWindows())
+            {
+                asyncExec(window, new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        changeProject(window, tapestryProject);
+                    }
+                });
+            }
+            
+            return Status.OK_STATUS;
+        }
+        
+        private List<IWorkbenchWindow> detachWindows()
+        {
+            synchronized (analysisJobs)
+            {
+                if (analysisJobs.get(tapestryProject) == this)
+                {
+                    analysisJobs.remove(tapestryProject);
+                }
+                
+                List<IWorkbenchWindow> windows = new ArrayList<IWorkbenchWindow>(this.windows);
+                
+                this.windows.clear();
+                
+                return windows;
+            }
+        }
+    }
+    
+    /**
+     * Schedules analysis of the project for the window. Windows waiting for the same project
+     * share one job, and analysis of the project previously requested by the window is cancelled
+     * if no other window waits for it.
+     */
+    private void analyzeProject(IWorkbenchWindow window, TapestryProject tapestryProject)
+    {
+        supersedeAnalysis(window, tapestryProject);
+        
+        synchronized (analysisJobs)
+        {
+            AnalyzeProjectJob job = analysisJobs.get(tapestryProject);
+            
+            if (job == null)
+            {
+                job = new AnalyzeProjectJob(tapestryProject);
+                
+                //  Don't show progress pop-up to the user's face
+                job.setUser(false);
+                
+                analysisJobs.put(tapestryProject, job);
+                
+                job.schedule();
+            }
+            
+            if (!job.windows.add(window))
+            {
+                //  Window is already waiting for this job and holds a reference to the model
+                projectRegistry.release(tapestryProject);
+            }
+        }
+    }
+    
+    private void supersedeAnalysis(IWorkbenchWindow window, TapestryProject tapestryProject)
+    {
+        synchronized (analysisJobs)
+        {
+            for (Iterator<AnalyzeProjectJob> iterator = analysisJobs.values().iterator(); iterator.hasNext();)
+            {
+                AnalyzeProjectJob job = iterator.next();
+                
+                if (job.tapestryProject != tapestryProject && job.windows.remove(window))
+                {
+                    projectRegistry.release(job.tapestryProject);
                     
-                    //  Don't show progress pop-up to the user's face
-                    analyzeProject.setUser(false);
-                    analyzeProject.schedule();
+                    if (job.windows.isEmpty())
+                    {
+                        iterator.remove();
+                        
+                        job.cancel();
+                    }
                 }
             }
-        })
-        .addListener();
+        }
+    }
+    
+    private void refreshProject(final TapestryProject tapestryProject)
+    {
+        Job job;
+        
+        synchronized (analysisJobs)
+        {
+            job = refreshJobs.get(tapestryProject);
+            
+            if (job == null)
+            {
+                job = new Job(EclipseUtils.ECLIPSE_INTEGRATION_FOR_TAPESTRY5)
+                {
+                    @Override
+                    public boolean belongsTo(Object family)
+                    {
+                        return family == tapestryProject;
+                    }
+                    
+                    @Override
+                    protected IStatus run(IProgressMonitor monitor)
+                    {
+                        monitor.beginTask("Updating " + tapestryProject.getProject().getName(), IProgressMonitor.UNKNOWN);
+                        monitor.worked(1);
+                        
+                        final boolean projectChanged;
+                        
+                        try
+                        {
+                            boolean indexesChanged = tapestryProject.updateIndexes(monitor);
+                            
+                            projectChanged = tapestryProject.refresh(monitor);
+                            
+                            if (!projectChanged && !indexesChanged)
+                            {
+                                return Status.OK_STATUS;
+                            }
+                        }
+                        catch (OperationCanceledException e)
+                        {
+                            return Status.CANCEL_STATUS;
+                        }
+                        finally
+                        {
+                            monitor.done();
+                        }
+                        
+                        for (Entry<IWorkbenchWindow, TapestryProject> entry : currentProjects.entrySet())
+                        {
+                            if (entry.getValue() == tapestryProject)
+                            {
+                                final IWorkbenchWindow window = entry.getKey();
+                                
+                                asyncExec(window, new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        if (projectChanged)
+                                        {
+                                            notifyProjectChanged(window, tapestryProject);
+                                        }
+                                        else
+                                        {
+                                            notifyIndexesChanged(window, tapestryProject);
+                                        }
+                                    }
+                                });
+                            }
+                        }
+                        
+                        return Status.OK_STATUS;
+                    }
+                };
+                
+                job.setUser(false);
+                
+                refreshJobs.put(tapestryProject, job);
+            }
+        }
+        
+        //  Changes are accumulated by the project until the job runs,
+        //  so a burst of deltas is handled by a single refresh
+        job.schedule(REFRESH_DELAY);
     }
     
     private void changeProject(IWorkbenchWindow window, TapestryProject newTapestryProject)
     {
-        if (newTapestryProject != currentProjects.get(window))
+        TapestryProject oldTapestryProject = currentProjects.get(window);
+        
+        if (newTapestryProject != oldTapestryProject)
         {
             currentProjects.put(window, newTapestryProject);
             
+            if (oldTapestryProject != null)
+            {
+                projectRegistry.release(oldTapestryProject);
+            }
+            
             notifyProjectChanged(window, newTapestryProject);
         }
+        else
+        {
+            //  Window already holds a reference to this model
+            projectRegistry.release(newTapestryProject);
+        }
     }
     
     private void notifyProjectChanged(IWorkbenchWindow targetWindow, TapestryProject newTapestryProject)
@@ -118,9 +460,50 @@ public class TapestryProjectWatchdog extends AbstractTapestryWatchdog
         }
     }
 
+    private void notifyIndexesChanged(IWorkbenchWindow targetWindow, TapestryProject tapestryProject)
+    {
+        notifyIndexesChanged(tapestryContextListeners.get(targetWindow), targetWindow, tapestryProject);
+        notifyIndexesChanged(tapestryContextListeners.get(NULL_WINDOW), targetWindow, tapestryProject);
+    }
+    
+    private void notifyIndexesChanged(List<ITapestryContextListener> listeners,
+            IWorkbenchWindow targetWindow, TapestryProject tapestryProject)
+    {
+        if (listeners != null)
+        {
+            for (ITapestryContextListener listener : listeners)
+            {
+                listener.indexesChanged(targetWindow, tapestryProject);
+            }
+        }
+    }
+    
     @Override
     public void stop()
     {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(postChangeListener);
+        postChangeListener = null;
+        
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(projectCloseListener);
+        projectCloseListener = null;
+        
+        JavaCore.removeElementChangedListener(elementChangedListener);
+        elementChangedListener = null;
+        
+        synchronized (analysisJobs)
+        {
+            for (TapestryProject tapestryProject : projectRegistry.getTapestryProjects())
+            {
+                Job.getJobManager().cancel(tapestryProject);
+            }
+            
+            analysisJobs.clear();
+            refreshJobs.clear();
+        }
+        
+        currentProjects.clear();
+        projectRegistry.clear();
+        
         windowListener.removeListener();
         windowListener = null;
         
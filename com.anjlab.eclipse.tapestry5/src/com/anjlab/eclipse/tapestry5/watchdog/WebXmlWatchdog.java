@@ -20,7 +20,7 @@ import org.eclipse.core.resources.ResourcesPlugin;
 
 import com.anjlab.eclipse.tapestry5.Activator;
 import com.anjlab.eclipse.tapestry5.EclipseUtils;
-import com.anjlab.eclipse.tapestry5.TapestryUtils;
+import com.anjlab.eclipse.tapestry5.ProjectTopology;
 
 public class WebXmlWatchdog extends AbstractWatchdog
 {
@@ -114,15 +114,18 @@ public class WebXmlWatchdog extends AbstractWatchdog
     {
         WebXml webXml = new WebXml();
         
-        IContainer webapp = TapestryUtils.findWebapp(project);
+        IFile webXmlFile = null;
         
-        if (webapp == null)
+        for (IContainer webapp : ProjectTopology.get(project).getWebapps())
         {
-            return webXml;
+            webXmlFile = (IFile) webapp.findMember("/WEB-INF/web.xml");
+            
+            if (webXmlFile != null)
+            {
+                break;
+            }
         }
         
-        IFile webXmlFile = (IFile) webapp.findMember("/WEB-INF/web.xml");
-        
         if (webXmlFile == null)
         {
             return webXml;